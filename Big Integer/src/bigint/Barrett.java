@@ -0,0 +1,104 @@
+package bigint;
+
+/**
+ * This class reduces packed magnitudes (see Limbs) modulo a fixed modulus m with
+ * Barrett's method. The reciprocal mu = floor(BASE^(2k) / m), where m has k limbs,
+ * is computed once, after which each reduction of a value below BASE^(2k) takes
+ * two multiplications and at most two subtractions instead of a division.
+ *
+ */
+final class Barrett {
+
+	/**
+	 * Modulus magnitude, greater than one
+	 */
+	private final int[] m;
+
+	/**
+	 * Number of limbs in the modulus
+	 */
+	private final int k;
+
+	/**
+	 * floor(BASE^(2k) / m)
+	 */
+	private final int[] mu;
+
+	/**
+	 * Initializes this reducer for a modulus.
+	 *
+	 * @param m Modulus magnitude, greater than one
+	 */
+	Barrett(int[] m) {
+		this.m = m;
+		this.k = m.length;
+		this.mu = Division.divideAndRemainder(Division.shiftLeft(Division.ONE, 2 * k), m)[0];
+	}
+
+	/**
+	 * Reduces a magnitude modulo m.
+	 *
+	 * @param x Magnitude less than BASE^(2k), such as the product of two residues
+	 * @return New magnitude x mod m, or x itself if it is already less than m
+	 */
+	int[] reduce(int[] x) {
+		if (Limbs.compare(x, m) < 0) {
+			return x;
+		}
+		int[] q = Limbs.slice(Limbs.multiply(Limbs.slice(x, k - 1, x.length), mu), k + 1, 2 * k + 2);
+		int[] r1 = Limbs.slice(x, 0, k + 1);
+		int[] r2 = Limbs.slice(Limbs.multiply(q, m), 0, k + 1);
+		int[] r;
+		if (Limbs.compare(r1, r2) >= 0) {
+			r = Limbs.subtract(r1, r2);
+		} else { // the low limbs wrapped around: add BASE^(k+1)
+			r = Limbs.subtract(Limbs.add(r1, Division.shiftLeft(Division.ONE, k + 1)), r2);
+		}
+		while (Limbs.compare(r, m) >= 0) {
+			r = Limbs.subtract(r, m);
+		}
+		return r;
+	}
+
+	/**
+	 * Raises a residue to a power modulo m, one decimal digit of the exponent at
+	 * a time: for each digit e, the result is raised to the tenth power and then
+	 * multiplied by base^e from a table of the first ten powers.
+	 *
+	 * @param base Magnitude less than m
+	 * @param exponent Exponent magnitude
+	 * @return New magnitude base^exponent mod m
+	 */
+	int[] pow(int[] base, int[] exponent) {
+		int[][] powers = new int[10][];
+		powers[0] = Division.ONE;
+		for (int i = 1; i < 10; i++) {
+			powers[i] = reduce(Limbs.multiply(powers[i - 1], base));
+		}
+		int[] result = Division.ONE;
+		boolean started = false;
+		for (int i = exponent.length - 1; i >= 0; i--) {
+			int limb = exponent[i];
+			int scale = Limbs.BASE / 10;
+			if (i == exponent.length - 1) {
+				while (scale > limb && scale > 1) {
+					scale /= 10;
+				}
+			}
+			for (; scale > 0; scale /= 10) {
+				int digit = limb / scale % 10;
+				if (started) {
+					int[] r2 = reduce(Limbs.multiply(result, result));
+					int[] r4 = reduce(Limbs.multiply(r2, r2));
+					int[] r5 = reduce(Limbs.multiply(r4, result));
+					result = reduce(Limbs.multiply(r5, r5));
+				}
+				if (digit != 0) {
+					result = reduce(Limbs.multiply(result, powers[digit]));
+					started = true;
+				}
+			}
+		}
+		return result;
+	}
+}
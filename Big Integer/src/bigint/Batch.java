@@ -0,0 +1,199 @@
+package bigint;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class implements the batch operations of BigInteger (addAll, sum and
+ * dotProduct). Operands are processed in blocks of BLOCK entries: the values of
+ * compact operands (see BigInteger.valueOf) are gathered into primitive long
+ * arrays, combined in a tight overflow-checked loop, and only entries that are
+ * not compact or that overflow go through the general BigInteger methods.
+ * The scratch arrays are kept per thread and reused across calls, and partial
+ * sums accumulate in a MutableBigInteger, with running long totals spilled into
+ * it without allocating.
+ *
+ * Parallel variants split the operand range on the common ForkJoinPool; ranges
+ * shorter than PARALLEL_CUTOFF entries are processed on the current thread.
+ *
+ */
+final class Batch {
+
+	/**
+	 * Number of entries gathered into the scratch arrays at a time
+	 */
+	static final int BLOCK = 1024;
+
+	/**
+	 * Length of range below which a parallel batch is not split further
+	 */
+	static final int PARALLEL_CUTOFF = 8 * BLOCK;
+
+	/**
+	 * Scratch arrays of each thread, reused by every addAll and dotProduct call
+	 */
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+	// prevent instantiation
+	private Batch() { }
+
+	/**
+	 * Scratch arrays for one block of operands
+	 */
+	private static final class Scratch {
+		final long[] x = new long[BLOCK], y = new long[BLOCK], s = new long[BLOCK];
+		final boolean[] fast = new boolean[BLOCK];
+	}
+
+	/**
+	 * Adds a[i] + b[i] into sums[i] for i in from..to-1.
+	 */
+	static void addAll(BigInteger[] a, BigInteger[] b, BigInteger[] sums, int from, int to) {
+		Scratch scratch = SCRATCH.get();
+		long[] x = scratch.x, y = scratch.y, s = scratch.s;
+		boolean[] fast = scratch.fast;
+		for (int start = from; start < to; start += BLOCK) {
+			int n = Math.min(BLOCK, to - start);
+			for (int i = 0; i < n; i++) { // gather
+				BigInteger p = a[start + i], q = b[start + i];
+				fast[i] = p.compact && q.compact;
+				x[i] = p.value;
+				y[i] = q.value;
+			}
+			for (int i = 0; i < n; i++) { // add, flagging overflow
+				long sum = x[i] + y[i];
+				s[i] = sum;
+				fast[i] &= ((x[i] ^ sum) & (y[i] ^ sum)) >= 0;
+			}
+			for (int i = 0; i < n; i++) { // scatter
+				sums[start + i] = fast[i] ? BigInteger.valueOf(s[i])
+						: BigInteger.add(a[start + i], b[start + i]);
+			}
+		}
+	}
+
+	/**
+	 * Sums a[i] * b[i] for i in from..to-1.
+	 */
+	static BigInteger dotProduct(BigInteger[] a, BigInteger[] b, int from, int to) {
+		Scratch scratch = SCRATCH.get();
+		long[] x = scratch.x, y = scratch.y;
+		boolean[] fast = scratch.fast;
+		MutableBigInteger acc = new MutableBigInteger();
+		long small = 0;
+		for (int start = from; start < to; start += BLOCK) {
+			int n = Math.min(BLOCK, to - start);
+			for (int i = 0; i < n; i++) { // gather
+				BigInteger p = a[start + i], q = b[start + i];
+				fast[i] = p.compact && q.compact;
+				x[i] = p.value;
+				y[i] = q.value;
+			}
+			for (int i = 0; i < n; i++) {
+				if (!fast[i]) {
+					acc.multiplyAccumulate(a[start + i], b[start + i]);
+					continue;
+				}
+				long hi = Math.multiplyHigh(x[i], y[i]);
+				long lo = x[i] * y[i];
+				long sum = small + lo;
+				if (((hi == 0 && lo >= 0) || (hi == -1 && lo < 0))
+						&& ((small ^ sum) & (lo ^ sum)) >= 0) {
+					small = sum;
+				} else { // spill the running long total, then this product
+					acc.addTo(small);
+					acc.multiplyAccumulate(a[start + i], b[start + i]);
+					small = 0;
+				}
+			}
+		}
+		if (acc.isZero()) {
+			return BigInteger.valueOf(small);
+		}
+		acc.addTo(small);
+		return acc.toBigInteger();
+	}
+
+	/**
+	 * Sums all values of a sequence.
+	 */
+	static BigInteger sum(Iterable<BigInteger> values) {
+		MutableBigInteger acc = new MutableBigInteger();
+		long small = 0;
+		for (BigInteger v : values) {
+			if (!v.compact) {
+				acc.addTo(v);
+				continue;
+			}
+			long sum = small + v.value;
+			if (((small ^ sum) & (v.value ^ sum)) >= 0) {
+				small = sum;
+			} else { // spill the running long total
+				acc.addTo(small);
+				small = v.value;
+			}
+		}
+		if (acc.isZero()) {
+			return BigInteger.valueOf(small);
+		}
+		acc.addTo(small);
+		return acc.toBigInteger();
+	}
+
+	/**
+	 * Parallel version of addAll over the whole arrays.
+	 */
+	static void parallelAddAll(BigInteger[] a, BigInteger[] b, BigInteger[] sums) {
+		ForkJoinPool.commonPool().invoke(new AddTask(a, b, sums, 0, a.length));
+	}
+
+	/**
+	 * Parallel version of dotProduct over the whole arrays.
+	 */
+	static BigInteger parallelDotProduct(BigInteger[] a, BigInteger[] b) {
+		return ForkJoinPool.commonPool().invoke(new DotTask(a, b, 0, a.length));
+	}
+
+	private static final class AddTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final BigInteger[] a, b, sums;
+		private final int from, to;
+
+		AddTask(BigInteger[] a, BigInteger[] b, BigInteger[] sums, int from, int to) {
+			this.a = a; this.b = b; this.sums = sums;
+			this.from = from; this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from < PARALLEL_CUTOFF) {
+				addAll(a, b, sums, from, to);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new AddTask(a, b, sums, from, mid), new AddTask(a, b, sums, mid, to));
+		}
+	}
+
+	private static final class DotTask extends RecursiveTask<BigInteger> {
+		private static final long serialVersionUID = 1L;
+		private final BigInteger[] a, b;
+		private final int from, to;
+
+		DotTask(BigInteger[] a, BigInteger[] b, int from, int to) {
+			this.a = a; this.b = b;
+			this.from = from; this.to = to;
+		}
+
+		protected BigInteger compute() {
+			if (to - from < PARALLEL_CUTOFF) {
+				return dotProduct(a, b, from, to);
+			}
+			int mid = (from + to) >>> 1;
+			DotTask left = new DotTask(a, b, from, mid);
+			left.fork();
+			BigInteger right = new DotTask(a, b, mid, to).compute();
+			return BigInteger.add(left.join(), right);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package bigint;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Benchmarks BigInteger parse, add (same and mixed signs), multiply and toString
+ * over operands of 10 to 10^6 digits, reporting time and bytes allocated per
+ * operation. Before timing each size, the results are checked against
+ * java.math.BigInteger.
+ *
+ * Usage: java bigint.BigBench [maxDigits] [linked|packed]
+ *
+ */
+public class BigBench {
+
+	/**
+	 * Operand sizes, in digits
+	 */
+	static final int[] SIZES = { 10, 100, 1000, 10000, 100000, 1000000 };
+
+	/**
+	 * Minimum time spent warming up, and measuring, each operation
+	 */
+	static final long WARMUP_NANOS = 300000000L, MEASURE_NANOS = 700000000L;
+
+	/**
+	 * Keeps results reachable so the JIT cannot drop the benchmarked calls
+	 */
+	static volatile Object sink;
+
+	static com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) {
+		int maxDigits = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		boolean packed = args.length > 1 && args[1].equalsIgnoreCase("packed");
+		Random random = new Random(112);
+
+		System.out.printf("%-10s %9s %14s %14s%n", "operation", "digits", "ns/op", "bytes/op");
+		for (int digits : SIZES) {
+			if (digits > maxDigits) {
+				break;
+			}
+			String x = randomDigits(random, digits);
+			String y = randomDigits(random, digits);
+			BigInteger a = parse(x, packed), b = parse(y, packed), c = parse("-" + y, packed);
+			verify(x, y, a, b, c);
+
+			report("parse", digits, () -> parse(x, packed));
+			report("add", digits, () -> BigInteger.add(a, b));
+			report("addMixed", digits, () -> BigInteger.add(a, c));
+			report("multiply", digits, () -> BigInteger.multiply(a, b));
+			report("toString", digits, () -> a.toString());
+		}
+	}
+
+	private static BigInteger parse(String integer, boolean packed) {
+		return packed ? BigInteger.parsePacked(integer) : BigInteger.parse(integer);
+	}
+
+	/**
+	 * Checks every benchmarked operation against java.math.BigInteger.
+	 */
+	private static void verify(String x, String y, BigInteger a, BigInteger b, BigInteger c) {
+		java.math.BigInteger ja = new java.math.BigInteger(x);
+		java.math.BigInteger jb = new java.math.BigInteger(y);
+		check("parse", ja, a);
+		check("add", ja.add(jb), BigInteger.add(a, b));
+		check("addMixed", ja.subtract(jb), BigInteger.add(a, c));
+		check("multiply", ja.multiply(jb), BigInteger.multiply(a, b));
+	}
+
+	private static void check(String operation, java.math.BigInteger expected, BigInteger actual) {
+		if (!expected.toString().equals(actual.toString())) {
+			throw new IllegalStateException(operation + " returned a wrong result");
+		}
+	}
+
+	/**
+	 * Warms up an operation, then runs it repeatedly for at least MEASURE_NANOS and
+	 * prints the mean time and allocation per call.
+	 */
+	private static void report(String operation, int digits, Supplier<Object> op) {
+		run(op, WARMUP_NANOS);
+		long bytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		long start = System.nanoTime();
+		long calls = run(op, MEASURE_NANOS);
+		long elapsed = System.nanoTime() - start;
+		bytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytes;
+		System.out.printf("%-10s %9d %14.1f %14d%n", operation, digits,
+				(double)elapsed / calls, bytes / calls);
+	}
+
+	/**
+	 * Calls op in doubling batches until at least nanos have passed.
+	 *
+	 * @return Number of calls made
+	 */
+	private static long run(Supplier<Object> op, long nanos) {
+		long calls = 0;
+		long end = System.nanoTime() + nanos;
+		for (int batch = 1; System.nanoTime() < end; batch *= 2) {
+			for (int i = 0; i < batch; i++) {
+				sink = op.get();
+			}
+			calls += batch;
+		}
+		return calls;
+	}
+
+	private static String randomDigits(Random random, int digits) {
+		char[] chars = new char[digits];
+		chars[0] = (char)('1' + random.nextInt(9));
+		for (int i = 1; i < digits; i++) {
+			chars[i] = (char)('0' + random.nextInt(10));
+		}
+		return new String(chars);
+	}
+}
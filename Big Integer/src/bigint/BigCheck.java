@@ -0,0 +1,137 @@
+package bigint;
+
+import java.util.Random;
+
+/**
+ * Checks multiply, divide, remainder and modPow against java.math.BigInteger on
+ * random operands whose lengths fall just below, at and just above each
+ * algorithm threshold: Karatsuba, Toom-3 and number-theoretic transform for
+ * multiply, Burnikel-Ziegler for divide and remainder, and Barrett reduction
+ * for modPow. The transform is also forced onto short operands with
+ * setNttThreshold. Operands made of nines only are included to exercise carries.
+ *
+ * Throws IllegalStateException at the first wrong result.
+ *
+ * Usage: java bigint.BigCheck [rounds]
+ *
+ */
+public class BigCheck {
+
+	static Random random = new Random(2024);
+
+	/**
+	 * Number of random operand pairs per length
+	 */
+	static int rounds;
+
+	public static void main(String[] args) {
+		rounds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+
+		int[] multiplyLengths = {
+				Limbs.KARATSUBA_THRESHOLD - 1, Limbs.KARATSUBA_THRESHOLD, Limbs.KARATSUBA_THRESHOLD + 1,
+				Limbs.TOOM3_THRESHOLD - 1, Limbs.TOOM3_THRESHOLD, Limbs.TOOM3_THRESHOLD + 1
+		};
+		for (int length : multiplyLengths) {
+			checkMultiply(length);
+		}
+		System.out.println("multiply ok");
+
+		int saved = Limbs.nttThreshold;
+		try {
+			for (int length : new int[] { saved - 1, saved, saved + 1 }) {
+				checkMultiply(length);
+			}
+			BigInteger.setNttThreshold(Limbs.TOOM3_THRESHOLD * Limbs.DIGITS);
+			for (int length : new int[] { Limbs.TOOM3_THRESHOLD, Limbs.TOOM3_THRESHOLD + 1, 1000, 2500 }) {
+				checkMultiply(length);
+			}
+		} finally {
+			BigInteger.setNttThreshold(saved * Limbs.DIGITS);
+		}
+		System.out.println("ntt multiply ok");
+
+		int bz = Division.BURNIKEL_ZIEGLER_THRESHOLD, offset = Division.BURNIKEL_ZIEGLER_OFFSET;
+		int[] divisorLengths = { 1, 2, bz - 1, bz, bz + 1, 3 * bz };
+		for (int divisor : divisorLengths) {
+			for (int extra : new int[] { 0, 1, offset - 1, offset, offset + 1, 4 * divisor }) {
+				checkDivide(divisor + extra, divisor);
+			}
+		}
+		System.out.println("divide ok");
+
+		for (int length : new int[] { 1, 2, bz / 2 - 1, bz / 2, bz - 1, bz, bz + 1 }) {
+			checkModPow(length);
+		}
+		System.out.println("modPow ok");
+	}
+
+	/**
+	 * Checks products of operands with the given number of limbs, balanced and
+	 * with the other operand three times as long.
+	 */
+	private static void checkMultiply(int limbs) {
+		for (int i = 0; i <= rounds; i++) {
+			String x = operand(limbs, i == 0), y = operand(limbs, i == 0), z = operand(3 * limbs, i == 0);
+			check("multiply", limbs, j(x).multiply(j(y)), BigInteger.multiply(b(x), b(y)));
+			check("multiply", limbs, j(z).multiply(j(y)), BigInteger.multiply(b(z), b(y)));
+		}
+	}
+
+	/**
+	 * Checks quotients and remainders of dividends and divisors with the given
+	 * numbers of limbs.
+	 */
+	private static void checkDivide(int dividendLimbs, int divisorLimbs) {
+		for (int i = 0; i <= rounds; i++) {
+			String x = operand(dividendLimbs, i == 0), y = operand(divisorLimbs, i == 1);
+			check("divide", divisorLimbs, j(x).divide(j(y)), BigInteger.divide(b(x), b(y)));
+			check("remainder", divisorLimbs, j(x).remainder(j(y)), BigInteger.remainder(b(x), b(y)));
+		}
+	}
+
+	/**
+	 * Checks modular powers with a modulus of the given number of limbs, a base
+	 * twice as long and a two limb exponent.
+	 */
+	private static void checkModPow(int limbs) {
+		for (int i = 0; i <= rounds; i++) {
+			String x = operand(2 * limbs, i == 0), e = operand(2, false), m = operand(limbs, i == 1);
+			if (m.startsWith("-")) {
+				m = m.substring(1);
+			}
+			if (e.startsWith("-")) {
+				e = e.substring(1);
+			}
+			check("modPow", limbs, j(x).modPow(j(e), j(m)), BigInteger.modPow(b(x), b(e), b(m)));
+		}
+	}
+
+	private static java.math.BigInteger j(String integer) {
+		return new java.math.BigInteger(integer);
+	}
+
+	private static BigInteger b(String integer) {
+		return BigInteger.parsePacked(integer);
+	}
+
+	private static void check(String operation, int limbs, java.math.BigInteger expected, BigInteger actual) {
+		if (!expected.toString().equals(actual.toString())) {
+			throw new IllegalStateException(operation + " returned a wrong result at " + limbs + " limbs");
+		}
+	}
+
+	/**
+	 * Returns a random integer of exactly the given number of limbs, with a random
+	 * sign, made of nines only if nines is true.
+	 */
+	private static String operand(int limbs, boolean nines) {
+		int digits = (limbs - 1) * Limbs.DIGITS + 1 + random.nextInt(Limbs.DIGITS);
+		char[] chars = new char[digits + 1];
+		chars[0] = random.nextBoolean() ? '-' : '+';
+		chars[1] = nines ? '9' : (char)('1' + random.nextInt(9));
+		for (int i = 2; i <= digits; i++) {
+			chars[i] = nines ? '9' : (char)('0' + random.nextInt(10));
+		}
+		return new String(chars);
+	}
+}
@@ -1,6 +1,15 @@
 
 package bigint;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
 /**
  * This class encapsulates a BigInteger, i.e. a positive or negative integer with 
  * any number of digits, which overcomes the computer storage length limitation of 
@@ -30,6 +39,78 @@ public class BigInteger {
 	 */
 	DigitNode front;
 	
+	/**
+	 * Packed magnitude of this integer in base 10^9 limbs, Least Significant Limb
+	 * first (see Limbs), or null if this integer is stored in the linked list.
+	 * When this is not null, front is not used and is always null. The packed
+	 * storage mode costs about 4 bytes per 9 digits, instead of one DigitNode
+	 * per digit.
+	 */
+	int[] limbs;
+	
+	/**
+	 * True if this integer is held inline in value instead of in a linked list or
+	 * in limbs. This compact storage mode is used for integers that fit in a long
+	 * (other than Long.MIN_VALUE); front and limbs are then always null.
+	 */
+	boolean compact;
+	
+	/**
+	 * Value of this integer when compact is true, 0 otherwise
+	 */
+	long value;
+	
+	/**
+	 * Smallest and largest values kept in CACHE
+	 */
+	private static final int CACHE_LOW = -128, CACHE_HIGH = 1024;
+	
+	/**
+	 * Shared compact instances of the values CACHE_LOW through CACHE_HIGH. This is
+	 * safe because no method modifies its input big integers.
+	 */
+	private static final BigInteger[] CACHE = new BigInteger[CACHE_HIGH - CACHE_LOW + 1];
+	static {
+		for (int i = 0; i < CACHE.length; i++) {
+			CACHE[i] = compact(CACHE_LOW + i);
+		}
+	}
+	
+	/**
+	 * Longest run of digits that parse stores in the compact storage mode
+	 */
+	static final int COMPACT_PARSE_DIGITS = 18;
+	
+	/**
+	 * Size, in characters or bytes, of the buffers used by stream parse and writeTo
+	 */
+	private static final int STREAM_CHUNK = 8192;
+	
+	/**
+	 * Powers of ten from 10^0 to 10^9
+	 */
+	private static final int[] TEN_POWERS = {
+		1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000, 1000000000
+	};
+	
+	/**
+	 * Operand length, in digits, at which multiply of two linked list integers
+	 * packs them and uses Karatsuba or Toom-3 multiplication (see Limbs.multiply)
+	 * instead of the digit by digit method
+	 */
+	static final int LINKED_FAST_MULTIPLY_DIGITS = Limbs.KARATSUBA_THRESHOLD * Limbs.DIGITS;
+
+	/**
+	 * Largest limb count accepted from a binary encoding, the largest int array
+	 * the JVM allocates
+	 */
+	static final int MAX_LIMBS = Integer.MAX_VALUE - 8;
+
+	/**
+	 * Limbs readBinary allocates before any have been read
+	 */
+	private static final int READ_CHUNK = 1 << 16;
+
 	/**
 	 * Initializes this integer to a positive number with zero digits, in other
 	 * words this is the 0 (zero) valued integer.
@@ -38,6 +119,7 @@ public class BigInteger {
 		negative = false;
 		numDigits = 0;
 		front = null;
+		limbs = null;
 	}
 	
 	/**
@@ -67,6 +149,10 @@ public class BigInteger {
 	 * An integer with value 0 will correspond to a null (empty) list - see the BigInteger
 	 * constructor
 	 * 
+	 * An integer with at most 18 significant digits is returned in the compact storage
+	 * mode (see valueOf) instead of as a linked list; add and multiply treat the two
+	 * modes alike.
+	 * 
 	 * @param integer Integer string that is to be parsed
 	 * @return BigInteger instance that stores the input integer.
 	 * @throws IllegalArgumentException If input is incorrectly formatted
@@ -74,40 +160,414 @@ public class BigInteger {
 	public static BigInteger parse(String integer) 
 	throws IllegalArgumentException {
 		String str = integer.trim();
-		BigInteger parsed = new BigInteger();
-		parsed.negative = str.charAt(0) == '-';
-		if(str.charAt(0) == '-' || str.charAt(0) == '+') {
-			str = str.substring(1);
+		int start = 0;
+		if(str.length() > 0 && (str.charAt(0) == '-' || str.charAt(0) == '+')) {
+			start = 1;
 		}
-		for(int i = 0; i < str.length(); i++) {
-			if(str.length() != 1 && str.charAt(i) == '0') {
-				str = str.substring(1);
-				i--;
-			}
-			else{
-				break;
-			}
+		if(start == str.length()) {
+			throw new IllegalArgumentException();
 		}
-		for(int i = 0; i < str.length(); i++) { 
-			if(Character.isDigit(str.charAt(i)) == false){
+		for(int i = start; i < str.length(); i++) { 
+			if(str.charAt(i) < '0' || str.charAt(i) > '9'){
 				throw new IllegalArgumentException();
 			}
 		}
-		parsed.numDigits = str.length();
-		if(str.equals("0")) {
+		while(start < str.length() && str.charAt(start) == '0') { //skip leading zeros in place
+			start++;
+		}
+		if(start == str.length()) {
 			return new BigInteger();
 		}
-		DigitNode tail = new DigitNode(Character.getNumericValue(str.charAt(0)),null);
-		str = str.substring(1);
-		DigitNode temp;
-		for(int i = 0; i < str.length(); i++) {
-			temp = tail;
-			tail = new DigitNode(Character.getNumericValue(str.charAt(i)),temp);
+		if(str.length() - start <= COMPACT_PARSE_DIGITS) {
+			long v = 0;
+			for(int i = start; i < str.length(); i++) {
+				v = v * 10 + (str.charAt(i) - '0');
+			}
+			return valueOf(str.charAt(0) == '-' ? -v : v);
+		}
+		BigInteger parsed = new BigInteger();
+		parsed.negative = str.charAt(0) == '-';
+		parsed.numDigits = str.length() - start;
+		DigitNode tail = null;
+		for(int i = start; i < str.length(); i++) { //each digit becomes the new front
+			tail = new DigitNode(str.charAt(i) - '0',tail);
 		}
 		parsed.front = tail;
 		return parsed;
 	}
 	
+	/**
+	 * Parses an input integer string into a BigInteger instance that uses the packed
+	 * storage mode. The input format is the same as for parse. 
+	 * 
+	 * The returned integer can be used with add, multiply and toString exactly like
+	 * one returned by parse. When either operand of add or multiply is packed, the
+	 * result is packed as well.
+	 * 
+	 * @param integer Integer string that is to be parsed
+	 * @return BigInteger instance that stores the input integer in packed limbs.
+	 * @throws IllegalArgumentException If input is incorrectly formatted
+	 */
+	public static BigInteger parsePacked(String integer) 
+	throws IllegalArgumentException {
+		String str = integer.trim();
+		int start = 0;
+		if (str.length() > 0 && (str.charAt(0) == '-' || str.charAt(0) == '+')) {
+			start = 1;
+		}
+		if (start == str.length()) {
+			throw new IllegalArgumentException();
+		}
+		return packed(str.charAt(0) == '-', Limbs.parse(str, start, str.length()));
+	}
+	
+	/**
+	 * Parses an integer read from a character stream, in the same format as parse.
+	 * Digits are packed into limbs as they are read, in chunks, so the input is
+	 * never held as a String. The reader is read to its end but not closed.
+	 * 
+	 * @param in Reader supplying the integer
+	 * @return BigInteger instance that stores the input integer, in the packed storage
+	 *         mode, or the compact mode if it has at most 18 digits
+	 * @throws IOException If reading fails
+	 * @throws IllegalArgumentException If input is incorrectly formatted
+	 */
+	public static BigInteger parse(Reader in) 
+	throws IOException, IllegalArgumentException {
+		DigitStream digits = new DigitStream();
+		char[] buf = new char[STREAM_CHUNK];
+		int n;
+		while ((n = in.read(buf)) != -1) {
+			for (int i = 0; i < n; i++) {
+				digits.accept(buf[i]);
+			}
+		}
+		return digits.finish();
+	}
+	
+	/**
+	 * Parses an integer read from a channel of ASCII text, in the same format as
+	 * parse. Bytes are read in chunks into a direct buffer and packed into limbs as
+	 * they arrive. The channel is read to its end but not closed.
+	 * 
+	 * @param in Channel supplying the integer, such as a FileChannel
+	 * @return BigInteger instance that stores the input integer, in the packed storage
+	 *         mode, or the compact mode if it has at most 18 digits
+	 * @throws IOException If reading fails
+	 * @throws IllegalArgumentException If input is incorrectly formatted
+	 */
+	public static BigInteger parse(ReadableByteChannel in) 
+	throws IOException, IllegalArgumentException {
+		DigitStream digits = new DigitStream();
+		ByteBuffer buf = ByteBuffer.allocateDirect(STREAM_CHUNK);
+		while (in.read(buf) != -1) {
+			buf.flip();
+			while (buf.hasRemaining()) {
+				digits.accept(buf.get() & 0xff);
+			}
+			buf.clear();
+		}
+		return digits.finish();
+	}
+	
+	/**
+	 * Writes the decimal form of this integer, as returned by toString, to a
+	 * character stream in chunks, without building a String. A linked list integer
+	 * is packed first, which takes about half a byte per digit. The writer is not
+	 * flushed or closed.
+	 * 
+	 * @param out Writer to write to
+	 * @throws IOException If writing fails
+	 */
+	public void writeTo(Writer out) 
+	throws IOException {
+		if (compact) {
+			out.write(Long.toString(value));
+			return;
+		}
+		int[] mag = magnitude();
+		if (mag.length == 0) {
+			out.write('0');
+			return;
+		}
+		if (negative) {
+			out.write('-');
+		}
+		char[] buf = new char[STREAM_CHUNK];
+		int pos = 0;
+		for (int i = mag.length - 1; i >= 0; i--) {
+			if (pos + Limbs.DIGITS > buf.length) {
+				out.write(buf, 0, pos);
+				pos = 0;
+			}
+			int limb = mag[i];
+			int count = Limbs.DIGITS;
+			if (i == mag.length - 1) { // no leading zeros in the top limb
+				count = 1;
+				while (count < Limbs.DIGITS && limb >= TEN_POWERS[count]) {
+					count++;
+				}
+			}
+			for (int j = pos + count - 1; j >= pos; j--) {
+				buf[j] = (char)('0' + limb % 10);
+				limb /= 10;
+			}
+			pos += count;
+		}
+		out.write(buf, 0, pos);
+	}
+	
+	/**
+	 * Writes this integer in a compact binary encoding: a sign byte (1 if negative,
+	 * 0 otherwise), an int count of base 10^9 limbs, and the limbs as ints, Least
+	 * Significant Limb first. Zero has no limbs. This takes about 0.44 bytes per
+	 * digit and needs no decimal conversion to read back with readBinary.
+	 * 
+	 * @param out Output to write to
+	 * @throws IOException If writing fails
+	 */
+	public void writeBinary(DataOutput out) 
+	throws IOException {
+		writeBinary(out, negative, magnitude());
+	}
+	
+	/**
+	 * Writes a sign and a magnitude in the encoding of writeBinary.
+	 */
+	static void writeBinary(DataOutput out, boolean negative, int[] mag) 
+	throws IOException {
+		out.writeByte(negative ? 1 : 0);
+		out.writeInt(mag.length);
+		for (int i = 0; i < mag.length; i++) {
+			out.writeInt(mag[i]);
+		}
+	}
+	
+	/**
+	 * Reads an integer written by writeBinary.
+	 * 
+	 * @param in Input to read from
+	 * @return BigInteger instance holding the value read, in the packed storage mode,
+	 *         or the compact mode if it has at most 18 digits
+	 * @throws IOException If reading fails, the input ends early or the encoding is not valid
+	 */
+	public static BigInteger readBinary(DataInput in) 
+	throws IOException {
+		boolean neg = in.readByte() != 0;
+		int length = checkLength(in.readInt());
+		// grow the array as limbs arrive, so a corrupt count cannot allocate more
+		// than twice the data actually present
+		int[] mag = new int[Math.min(length, READ_CHUNK)];
+		for (int i = 0; i < length; i++) {
+			if (i == mag.length) {
+				mag = Arrays.copyOf(mag, (int)Math.min(length, 2L * mag.length));
+			}
+			mag[i] = in.readInt();
+		}
+		return fromBinary(neg, mag);
+	}
+	
+	/**
+	 * Checks a limb count read from a binary encoding.
+	 */
+	static int checkLength(int length) 
+	throws IOException {
+		if (length < 0 || length > MAX_LIMBS) {
+			throw new IOException("invalid BigInteger encoding");
+		}
+		return length;
+	}
+	
+	/**
+	 * Builds an integer from limbs read from a binary encoding, after checking them.
+	 */
+	static BigInteger fromBinary(boolean negative, int[] mag) 
+	throws IOException {
+		for (int i = 0; i < mag.length; i++) {
+			if (mag[i] < 0 || mag[i] >= Limbs.BASE) {
+				throw new IOException("invalid BigInteger encoding");
+			}
+		}
+		if (mag.length > 0 && mag[mag.length - 1] == 0) {
+			throw new IOException("invalid BigInteger encoding");
+		}
+		if (mag.length <= 2) { // at most 18 digits
+			long v = mag.length == 0 ? 0 : mag[0] + (mag.length == 2 ? (long)mag[1] * Limbs.BASE : 0);
+			return valueOf(negative ? -v : v);
+		}
+		return packed(negative, mag);
+	}
+	
+	/**
+	 * Tells whether this integer uses the packed storage mode.
+	 * 
+	 * @return True if the magnitude is held in packed limbs, false if in a linked list
+	 */
+	public boolean isPacked() {
+		return limbs != null;
+	}
+	
+	/**
+	 * Returns this integer in the packed storage mode. DOES NOT MODIFY this integer.
+	 * 
+	 * @return This integer if it is already packed, otherwise a new packed copy
+	 */
+	public BigInteger toPacked() {
+		if (limbs != null) {
+			return this;
+		}
+		return packed(negative, magnitude());
+	}
+	
+	/**
+	 * Returns this integer in the linked list storage mode. DOES NOT MODIFY this integer.
+	 * 
+	 * @return This integer if it is already a linked list, otherwise a new linked copy
+	 */
+	public BigInteger toLinked() {
+		if (limbs == null && !compact) {
+			return this;
+		}
+		BigInteger linked = new BigInteger();
+		linked.front = Limbs.toDigits(magnitude());
+		linked.numDigits = numDigits;
+		linked.negative = negative && linked.front != null;
+		return linked;
+	}
+	
+	/**
+	 * Returns a BigInteger with the given value in the compact storage mode, which
+	 * holds the value inline instead of in a list of digits. Values from -128 to
+	 * 1024 are shared instances, so no object is allocated for them.
+	 * 
+	 * Operations on two compact integers use long arithmetic, and only widen to
+	 * the packed storage mode when the result would overflow a long.
+	 * 
+	 * @param value Value of the integer
+	 * @return BigInteger instance holding value
+	 */
+	public static BigInteger valueOf(long value) {
+		if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+			return CACHE[(int)value - CACHE_LOW];
+		}
+		if (value == Long.MIN_VALUE) { // its magnitude does not fit in a long
+			return packed(true, Limbs.fromLong(Long.MIN_VALUE));
+		}
+		return compact(value);
+	}
+	
+	/**
+	 * Tells whether this integer uses the compact storage mode (see valueOf).
+	 * 
+	 * @return True if the value is held inline
+	 */
+	public boolean isCompact() {
+		return compact;
+	}
+	
+	/**
+	 * Returns the sign of this integer.
+	 * 
+	 * @return -1, 0 or 1 as this integer is negative, zero or positive
+	 */
+	public int signum() {
+		if (numDigits == 0) {
+			return 0;
+		}
+		return negative ? -1 : 1;
+	}
+	
+	/**
+	 * Returns the negation of this integer, in the same storage mode. The digits
+	 * are shared with this integer, which is safe because no method modifies its
+	 * input big integers.
+	 * 
+	 * @return A BigInteger holding -this
+	 */
+	public BigInteger negate() {
+		if (compact) {
+			return valueOf(-value);
+		}
+		BigInteger result = new BigInteger();
+		result.negative = !negative && numDigits != 0;
+		result.numDigits = numDigits;
+		result.front = front;
+		result.limbs = limbs;
+		return result;
+	}
+	
+	/**
+	 * Builds a new compact integer. value must not be Long.MIN_VALUE.
+	 */
+	private static BigInteger compact(long value) {
+		BigInteger result = new BigInteger();
+		result.compact = true;
+		result.value = value;
+		result.negative = value < 0;
+		long mag = Math.abs(value);
+		while (mag != 0) {
+			result.numDigits++;
+			mag /= 10;
+		}
+		return result;
+	}
+	
+	/**
+	 * Sets the operand length at which multiply switches to multiplication by
+	 * number-theoretic transform, which takes O(n log n) time. Below this length
+	 * Toom-3 is faster. Both give exactly the same products.
+	 * 
+	 * @param digits Number of digits in the shorter operand, at least 1
+	 * @throws IllegalArgumentException If digits is less than 1
+	 */
+	public static void setNttThreshold(int digits) 
+	throws IllegalArgumentException {
+		if (digits < 1) {
+			throw new IllegalArgumentException();
+		}
+		Limbs.nttThreshold = Math.max(Limbs.TOOM3_THRESHOLD, (digits + Limbs.DIGITS - 1) / Limbs.DIGITS);
+	}
+	
+	/**
+	 * Returns the packed magnitude of this integer, packing the linked list if needed.
+	 */
+	int[] magnitude() {
+		if (limbs != null) {
+			return limbs;
+		}
+		return compact ? Limbs.fromLong(Math.abs(value)) : Limbs.fromDigits(front, numDigits);
+	}
+	
+	/**
+	 * Builds a packed integer from a sign and a magnitude. Zero is never negative.
+	 */
+	static BigInteger packed(boolean negative, int[] mag) {
+		BigInteger result = new BigInteger();
+		result.limbs = mag;
+		result.numDigits = Limbs.digitCount(mag);
+		result.negative = negative && mag.length > 0;
+		return result;
+	}
+	
+	/**
+	 * Adds two integers, at least one of which is packed, in the packed storage mode.
+	 */
+	private static BigInteger addPacked(BigInteger first, BigInteger second) {
+		int[] a = first.magnitude();
+		int[] b = second.magnitude();
+		if (first.negative == second.negative) {
+			return packed(first.negative, Limbs.add(a, b));
+		}
+		int cmp = Limbs.compare(a, b);
+		if (cmp == 0) {
+			return packed(false, Limbs.ZERO);
+		} else if (cmp > 0) {
+			return packed(first.negative, Limbs.subtract(a, b));
+		} else {
+			return packed(second.negative, Limbs.subtract(b, a));
+		}
+	}
+	
 	/**
 	 * Adds the first and second big integers, and returns the result in a NEW BigInteger object. 
 	 * DOES NOT MODIFY the input big integers.
@@ -120,9 +580,29 @@ public class BigInteger {
 	 * @return Result big integer
 	 */
 	public static BigInteger add(BigInteger first, BigInteger second) {
+		if(first.compact && second.compact) {
+			long sum = first.value + second.value;
+			if(((first.value ^ sum) & (second.value ^ sum)) >= 0) { //no overflow
+				return valueOf(sum);
+			}
+			return addPacked(first, second);
+		}
+		if(first.limbs != null || second.limbs != null) {
+			return addPacked(first, second);
+		}
+		first = first.toLinked();
+		second = second.toLinked();
 		if(first.front ==null && second.front == null) {
 			return new BigInteger();
 		}
+		if(first.front == null || second.front == null) { //x + 0, or 0 + x
+			BigInteger other = first.front == null ? second : first;
+			BigInteger sum = new BigInteger();
+			sum.front = other.front; //safe to share, since inputs are never modified
+			sum.numDigits = other.numDigits;
+			sum.negative = other.negative;
+			return sum;
+		}
 		if(first.negative == second.negative) {
 			DigitNode sum = new DigitNode(0,null);
 			DigitNode temp1;
@@ -199,102 +679,48 @@ public class BigInteger {
 			summation.numDigits = count;
 			return summation;
 		} else {
-			BigInteger ans = new BigInteger();
-			if(isEqual(first,second)) {
+			int cmp = compareMagnitude(first, second);
+			if(cmp == 0) {
 				return new BigInteger();
-			} else if(absIsGreater(first,second)) {
-				ans.negative = first.negative;
-				DigitNode one = first.front;
-				DigitNode two = appendZero(second.front,first.numDigits);
-				DigitNode sum = appendZero(new DigitNode(0,null),first.numDigits);
-				DigitNode temp = sum;
-				int carry = 0;
-				for(int i = 0; i < first.numDigits; i++) {
-					if(one.digit == 0 && two.digit !=0) {
-						one.digit = (10 - carry);
-						carry = 1;
-					} else {
-						one.digit = one.digit - carry;
-						carry = 0;
-					}
-					if(one.digit > two.digit) {
-						temp.digit = one.digit - two.digit;
-					} else if(one.digit < two.digit) {
-						temp.digit = ((10+one.digit) - (two.digit))%10;
-						carry += 1;
-					} else {
-						temp.digit = 0;
-					}
-					one = one.next;
-					two = two.next;
-					temp = temp.next;
-				}
-				
-				temp = sum; 
-				DigitNode trackZero = temp;
-				while(temp.next != null) {
-					trackZero = temp;
-					temp = temp.next;
-					if(temp.digit == 0 && temp.next == null) {
-						trackZero.next = null;
-					}
-				}
-				ans.front = trailingZero(sum);
-				int count = 0;
-				for(DigitNode temp2 = ans.front; temp2 != null; count++) {
-					temp2 = temp2.next;
-				}
-				ans.numDigits = count;
-				
-				return ans;
+			} else if(cmp > 0) {
+				return subtractMagnitude(first, second);
 			} else {
-				ans.negative = second.negative;
-				DigitNode one = second.front;
-				DigitNode two = appendZero(first.front,second.numDigits);
-				DigitNode sum = appendZero(new DigitNode(0,null),second.numDigits);
-				DigitNode temp = sum;
-				int carry = 0;
-				for(int i = 0; i < second.numDigits; i++) {
-					if(one.digit == 0 && two.digit !=0) {
-						one.digit = (10 - carry);
-						carry = 1;
-					} else {
-						one.digit = one.digit - carry;
-						carry = 0;
-					}
-					if(one.digit > two.digit) {
-						temp.digit = one.digit - two.digit;
-					} else if(one.digit < two.digit) {
-						temp.digit = ((10+one.digit) - (two.digit))%10;
-						carry += 1;
-					} else {
-						temp.digit = 0;
-					}
-					one = one.next;
-					two = two.next;
-					temp = temp.next;
-				}
-				
-				temp = sum; 
-				DigitNode trackZero = temp;
-				while(temp.next != null) {
-					trackZero = temp;
-					temp = temp.next;
-					if(temp.digit == 0 && temp.next == null) {
-						trackZero.next = null;
-					}
-				}
-				ans.front = trailingZero(sum);
-				int count = 0;
-				for(DigitNode temp2 = ans.front; temp2 != null; count++) {
-					temp2 = temp2.next;
-				}
-				ans.numDigits = count;
-				
-				return ans;
+				return subtractMagnitude(second, first);
 			}
 		}
 	}
+	
+	/**
+	 * Subtracts the second big integer from the first, and returns the result in a
+	 * NEW BigInteger object. DOES NOT MODIFY the input big integers.
+	 * 
+	 * @param first First big integer
+	 * @param second Second big integer
+	 * @return Result big integer, first - second
+	 */
+	public static BigInteger subtract(BigInteger first, BigInteger second) {
+		return add(first, second.negate());
+	}
+	
+	/**
+	 * Compares two big integers.
+	 * 
+	 * @param first First big integer
+	 * @param second Second big integer
+	 * @return Negative, zero or positive as first is less than, equal to or greater than second
+	 */
+	public static int compare(BigInteger first, BigInteger second) {
+		if (first.compact && second.compact) {
+			return Long.compare(first.value, second.value);
+		}
+		int sign = first.signum();
+		if (sign != second.signum()) {
+			return sign < second.signum() ? -1 : 1;
+		}
+		int cmp = Limbs.compare(first.magnitude(), second.magnitude());
+		return sign < 0 ? -cmp : cmp;
+	}
+	
 	private static DigitNode appendZero(DigitNode head, int desiredLen) {
 		DigitNode a = head;
 		DigitNode b = new DigitNode(0,null);
@@ -317,80 +743,70 @@ public class BigInteger {
 			return head;
 		}
 	}
-	private static DigitNode reverseList(DigitNode n) {
-		int count = 0;
-		DigitNode temp = n;
-		while(temp != null) {
-			count ++;
-			temp = temp.next;
-		}
-		DigitNode head = appendZero(new DigitNode(0,null), count);
-		DigitNode headTemp = head;
-		temp = n;
-		for(int i = 0; i<count; i++) {
-			headTemp.digit = temp.digit;
-			headTemp = headTemp.next;
-			temp = temp.next;
-		}
-		DigitNode curr = head;
-		DigitNode next = null;
-		DigitNode prev = null;
-		while(curr != null) {
-			next = curr.next;
-			curr.next = prev;
-			prev = curr;
-			curr = next;
-		}
-		head = prev;
-		return head;
-	}
-	private static Boolean absIsGreater(BigInteger first, BigInteger second) {
-		if(first.numDigits > second.numDigits) {
-			return true;
-		} else if(first.numDigits < second.numDigits) {
-			return false;
-		} else {
-			DigitNode one = reverseList(first.front);
-			DigitNode two = reverseList(second.front);
-			for(int i = 0; i < first.numDigits; i++) {
-				if(one.digit > two.digit) {
-					return true;
-				} else if(one.digit < two.digit) {
-					return false;
-				} else {
-					one = one.next;
-					two = two.next;
-				}
-			}
-		}
-		return false;
-	}
-	private static Boolean isEqual(BigInteger first, BigInteger second) {
+	
+	/**
+	 * Compares the magnitudes of two linked list integers in a single pass over
+	 * their digits. Neither list is modified.
+	 * 
+	 * @return Negative, zero or positive as |first| is less than, equal to or greater than |second|
+	 */
+	private static int compareMagnitude(BigInteger first, BigInteger second) {
 		if(first.numDigits != second.numDigits) {
-			return false;
-		}else {
-			DigitNode one = (first.front);
-			DigitNode two = (second.front);
-			for(int i = 0; i < first.numDigits; i++) {
-				if(one.digit != two.digit) {
-					return false;
-				} 
-				one = one.next;
-				two = two.next;
+			return first.numDigits < second.numDigits ? -1 : 1;
+		}
+		int cmp = 0;
+		DigitNode one = first.front;
+		DigitNode two = second.front;
+		while(one != null && two != null) {
+			if(one.digit != two.digit) {
+				cmp = one.digit > two.digit ? 1 : -1; //the most significant difference is seen last
 			}
+			one = one.next;
+			two = two.next;
 		}
-		return true;
+		return cmp;
 	}
-	private static DigitNode trailingZero(DigitNode node) {
-		DigitNode prev = new DigitNode(0,null);
-		for(DigitNode temp = node; temp!=null;temp = temp.next) {
-			if(temp.next == null && temp.digit == 0) {
-				prev.next = null;
-				trailingZero(node);
+	
+	/**
+	 * Subtracts the magnitude of the smaller integer from that of the larger one in a
+	 * single pass, allocating only the result list. The result takes the sign of
+	 * larger. Neither input is modified.
+	 * 
+	 * @param larger Integer with the larger magnitude
+	 * @param smaller Integer with the smaller magnitude
+	 * @return New BigInteger holding larger - smaller in magnitude
+	 */
+	private static BigInteger subtractMagnitude(BigInteger larger, BigInteger smaller) {
+		BigInteger ans = new BigInteger();
+		ans.negative = larger.negative;
+		DigitNode head = new DigitNode(0,null); //dummy node before the least significant digit
+		DigitNode tail = head;
+		DigitNode lastNonZero = head;
+		int count = 0;
+		int borrow = 0;
+		DigitNode two = smaller.front;
+		for(DigitNode one = larger.front; one != null; one = one.next) {
+			int diff = one.digit - borrow - (two == null ? 0 : two.digit);
+			if(diff < 0) {
+				diff += 10;
+				borrow = 1;
+			} else {
+				borrow = 0;
+			}
+			tail.next = new DigitNode(diff,null);
+			tail = tail.next;
+			count++;
+			if(diff != 0) {
+				lastNonZero = tail;
+				ans.numDigits = count;
+			}
+			if(two != null) {
+				two = two.next;
 			}
-			prev = temp;
 		}
-		return node;
+		lastNonZero.next = null; //drop insignificant zeros
+		ans.front = head.next;
+		return ans;
 	}
 	/**
 	 * Returns the BigInteger obtained by multiplying the first big integer
@@ -398,11 +814,35 @@ public class BigInteger {
 	 * 
 	 * This method DOES NOT MODIFY either of the input big integers
 	 * 
+	 * Packed operands, and linked list operands of LINKED_FAST_MULTIPLY_DIGITS
+	 * digits or more, are multiplied with schoolbook, Karatsuba, Toom-3 or
+	 * number-theoretic transform multiplication depending on their length
+	 * (see Limbs.multiply and setNttThreshold).
+	 * 
 	 * @param first First big integer
 	 * @param second Second big integer
 	 * @return A new BigInteger which is the product of the first and second big integers
 	 */
 	public static BigInteger multiply(BigInteger first, BigInteger second) {
+				if(first.compact && second.compact) {
+					long hi = Math.multiplyHigh(first.value, second.value);
+					long lo = first.value * second.value;
+					if((hi == 0 && lo >= 0) || (hi == -1 && lo < 0)) { //no overflow
+						return valueOf(lo);
+					}
+					return packed(first.negative != second.negative,
+							Limbs.multiply(first.magnitude(), second.magnitude()));
+				}
+				if(first.limbs != null || second.limbs != null) {
+					return packed(first.negative != second.negative,
+							Limbs.multiply(first.magnitude(), second.magnitude()));
+				}
+				if(Math.min(first.numDigits, second.numDigits) >= LINKED_FAST_MULTIPLY_DIGITS) {
+					return packed(first.negative != second.negative,
+							Limbs.multiply(first.magnitude(), second.magnitude())).toLinked();
+				}
+				first = first.toLinked();
+				second = second.toLinked();
 				BigInteger ans = new BigInteger();
 				if(first.front == null||second.front == null){
 					return new BigInteger();
@@ -452,23 +892,289 @@ public class BigInteger {
 				return ans;
 	}
 	
+	/**
+	 * Returns the BigInteger obtained by multiplying the first big integer
+	 * with the second big integer, using all available processors for large
+	 * operands. Sub-products are computed in parallel on the common ForkJoinPool;
+	 * operands shorter than about 3600 digits are multiplied on the calling
+	 * thread, exactly as multiply does.
+	 * 
+	 * This method DOES NOT MODIFY either of the input big integers
+	 * 
+	 * @param first First big integer
+	 * @param second Second big integer
+	 * @return A new BigInteger which is the product of the first and second big integers,
+	 *         in the packed storage mode if either input is packed
+	 */
+	public static BigInteger parallelMultiply(BigInteger first, BigInteger second) {
+		if(Math.min(first.numDigits, second.numDigits) < ParallelMultiply.CUTOFF * Limbs.DIGITS) {
+			return multiply(first, second);
+		}
+		return result(first, second, first.negative != second.negative,
+				ParallelMultiply.multiply(first.magnitude(), second.magnitude()));
+	}	
+	/**
+	 * Returns the BigInteger obtained by dividing the first big integer by the
+	 * second big integer. The quotient is truncated toward zero, so -7 / 2 is -3.
+	 * 
+	 * This method DOES NOT MODIFY either of the input big integers
+	 * 
+	 * @param first Dividend
+	 * @param second Divisor
+	 * @return A new BigInteger which is the quotient, in the packed storage mode if
+	 *         either input is packed
+	 * @throws ArithmeticException If second is zero
+	 */
+	public static BigInteger divide(BigInteger first, BigInteger second) 
+	throws ArithmeticException {
+		return divideAndRemainder(first, second)[0];
+	}
+	
+	/**
+	 * Returns the remainder of dividing the first big integer by the second big
+	 * integer. The remainder has the sign of the dividend, so -7 % 2 is -1.
+	 * 
+	 * This method DOES NOT MODIFY either of the input big integers
+	 * 
+	 * @param first Dividend
+	 * @param second Divisor
+	 * @return A new BigInteger which is the remainder, in the packed storage mode if
+	 *         either input is packed
+	 * @throws ArithmeticException If second is zero
+	 */
+	public static BigInteger remainder(BigInteger first, BigInteger second) 
+	throws ArithmeticException {
+		return divideAndRemainder(first, second)[1];
+	}
+	
+	/**
+	 * Divides the first big integer by the second big integer, returning both the
+	 * quotient (see divide) and the remainder (see remainder). Divisors shorter than
+	 * 720 digits use Knuth's long division; longer ones use Burnikel-Ziegler
+	 * recursive division, which takes about the time of a multiplication.
+	 * 
+	 * This method DOES NOT MODIFY either of the input big integers
+	 * 
+	 * @param first Dividend
+	 * @param second Divisor
+	 * @return Two element array holding a new quotient and a new remainder
+	 * @throws ArithmeticException If second is zero
+	 */
+	public static BigInteger[] divideAndRemainder(BigInteger first, BigInteger second) 
+	throws ArithmeticException {
+		if(first.compact && second.compact) { //neither is Long.MIN_VALUE, so this cannot overflow
+			if(second.value == 0) {
+				throw new ArithmeticException("division by zero");
+			}
+			return new BigInteger[] { valueOf(first.value / second.value), valueOf(first.value % second.value) };
+		}
+		int[][] qr = Division.divideAndRemainder(first.magnitude(), second.magnitude());
+		return new BigInteger[] {
+			result(first, second, first.negative != second.negative, qr[0]),
+			result(first, second, first.negative, qr[1])
+		};
+	}
+	
+	/**
+	 * Returns the greatest common divisor of two big integers, by Euclid's
+	 * algorithm on the remainders of division. Compact integers use long
+	 * arithmetic.
+	 * 
+	 * This method DOES NOT MODIFY either of the input big integers
+	 * 
+	 * @param first First big integer
+	 * @param second Second big integer
+	 * @return A new BigInteger holding the greatest common divisor, which is never
+	 *         negative and is 0 only if both inputs are 0, in the packed storage
+	 *         mode if either input is packed
+	 */
+	public static BigInteger gcd(BigInteger first, BigInteger second) {
+		if (first.compact && second.compact) { //neither is Long.MIN_VALUE, so the magnitudes fit
+			long a = Math.abs(first.value), b = Math.abs(second.value);
+			while (b != 0) {
+				long r = a % b;
+				a = b;
+				b = r;
+			}
+			return valueOf(a);
+		}
+		int[] a = first.magnitude();
+		int[] b = second.magnitude();
+		while (b.length > 0) {
+			int[] r = Division.divideAndRemainder(a, b)[1];
+			a = b;
+			b = r;
+		}
+		return result(first, second, false, a);
+	}
+	
+	/**
+	 * Returns base raised to the power exponent, modulo modulus. The result is
+	 * always between 0 and modulus - 1, even for a negative base. Products are
+	 * reduced with Barrett reduction, so no division is done after setup.
+	 * 
+	 * This method DOES NOT MODIFY any of the input big integers
+	 * 
+	 * @param base Base
+	 * @param exponent Exponent, not negative
+	 * @param modulus Modulus, greater than zero
+	 * @return A new BigInteger holding base^exponent mod modulus, in the packed
+	 *         storage mode if any input is packed
+	 * @throws ArithmeticException If the exponent is negative or the modulus is not positive
+	 */
+	public static BigInteger modPow(BigInteger base, BigInteger exponent, BigInteger modulus) 
+	throws ArithmeticException {
+		int[] m = modulus.magnitude();
+		if (modulus.negative || m.length == 0) {
+			throw new ArithmeticException("modulus not positive");
+		}
+		if (exponent.negative) {
+			throw new ArithmeticException("negative exponent");
+		}
+		boolean packedResult = base.limbs != null || exponent.limbs != null || modulus.limbs != null;
+		int[] r = Limbs.ZERO;
+		if (Limbs.compare(m, Division.ONE) != 0) {
+			int[] b = Division.divideAndRemainder(base.magnitude(), m)[1];
+			if (base.negative && b.length > 0) {
+				b = Limbs.subtract(m, b);
+			}
+			r = new Barrett(m).pow(b, exponent.magnitude());
+		}
+		BigInteger power = packed(false, r);
+		return packedResult ? power : power.toLinked();
+	}
+	
+	/**
+	 * Adds two arrays of big integers element by element, returning a NEW array
+	 * with sums[i] = first[i] + second[i]. Pairs of compact integers (see valueOf)
+	 * are added in blocks over primitive long arrays; other pairs use add.
+	 * 
+	 * This method DOES NOT MODIFY the input arrays or big integers
+	 * 
+	 * @param first First array of big integers
+	 * @param second Second array of big integers, as long as first
+	 * @return New array of sums
+	 * @throws IllegalArgumentException If the arrays differ in length
+	 */
+	public static BigInteger[] addAll(BigInteger[] first, BigInteger[] second) 
+	throws IllegalArgumentException {
+		return addAll(first, second, false);
+	}
+	
+	/**
+	 * Adds two arrays of big integers element by element (see addAll), optionally
+	 * splitting the arrays across all processors on the common ForkJoinPool.
+	 * 
+	 * @param first First array of big integers
+	 * @param second Second array of big integers, as long as first
+	 * @param parallel True to use all processors for large arrays
+	 * @return New array of sums
+	 * @throws IllegalArgumentException If the arrays differ in length
+	 */
+	public static BigInteger[] addAll(BigInteger[] first, BigInteger[] second, boolean parallel) 
+	throws IllegalArgumentException {
+		if (first.length != second.length) {
+			throw new IllegalArgumentException();
+		}
+		BigInteger[] sums = new BigInteger[first.length];
+		if (parallel) {
+			Batch.parallelAddAll(first, second, sums);
+		} else {
+			Batch.addAll(first, second, sums, 0, first.length);
+		}
+		return sums;
+	}
+	
+	/**
+	 * Returns the sum of a sequence of big integers. Runs of compact integers are
+	 * summed in a long, and the running total is kept in a MutableBigInteger, so
+	 * only the result is allocated.
+	 * 
+	 * @param values Big integers to sum
+	 * @return A new BigInteger holding the sum, 0 for an empty sequence
+	 */
+	public static BigInteger sum(Iterable<BigInteger> values) {
+		return Batch.sum(values);
+	}
+	
+	/**
+	 * Returns the dot product of two arrays of big integers, that is the sum of
+	 * first[i] * second[i] over all i. Products of compact integers are summed in
+	 * a long until it would overflow; everything else is accumulated in place in
+	 * a MutableBigInteger.
+	 * 
+	 * @param first First array of big integers
+	 * @param second Second array of big integers, as long as first
+	 * @return A new BigInteger holding the dot product
+	 * @throws IllegalArgumentException If the arrays differ in length
+	 */
+	public static BigInteger dotProduct(BigInteger[] first, BigInteger[] second) 
+	throws IllegalArgumentException {
+		return dotProduct(first, second, false);
+	}
+	
+	/**
+	 * Returns the dot product of two arrays of big integers (see dotProduct),
+	 * optionally splitting the arrays across all processors on the common
+	 * ForkJoinPool.
+	 * 
+	 * @param first First array of big integers
+	 * @param second Second array of big integers, as long as first
+	 * @param parallel True to use all processors for large arrays
+	 * @return A new BigInteger holding the dot product
+	 * @throws IllegalArgumentException If the arrays differ in length
+	 */
+	public static BigInteger dotProduct(BigInteger[] first, BigInteger[] second, boolean parallel) 
+	throws IllegalArgumentException {
+		if (first.length != second.length) {
+			throw new IllegalArgumentException();
+		}
+		if (parallel) {
+			return Batch.parallelDotProduct(first, second);
+		}
+		return Batch.dotProduct(first, second, 0, first.length);
+	}
+	
+	/**
+	 * Builds the result of an operation on first and second from a sign and a
+	 * magnitude, in the packed storage mode if either operand is packed, and in
+	 * the linked list mode otherwise.
+	 */
+	private static BigInteger result(BigInteger first, BigInteger second, boolean negative, int[] mag) {
+		BigInteger result = packed(negative, mag);
+		return first.limbs != null || second.limbs != null ? result : result.toLinked();
+	}	
 	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
+		if (compact) {
+			return Long.toString(value);
+		}
+		if (limbs != null) {
+			if (limbs.length == 0) {
+				return "0";
+			}
+			char[] buf = new char[(negative ? 1 : 0) + numDigits];
+			if (negative) {
+				buf[0] = '-';
+			}
+			Limbs.toChars(limbs, buf, buf.length);
+			return new String(buf);
+		}
 		if (front == null) {
 			return "0";
 		}
-		String retval = front.digit + "";
-		for (DigitNode curr = front.next; curr != null; curr = curr.next) {
-				retval = curr.digit + retval;
+		char[] buf = new char[(negative ? 1 : 0) + numDigits];
+		int pos = buf.length;
+		for (DigitNode curr = front; curr != null; curr = curr.next) {
+			buf[--pos] = (char)('0' + curr.digit); //least significant digit goes last
 		}
-		
 		if (negative) {
-			retval = '-' + retval;
+			buf[0] = '-';
 		}
-		return retval;
+		return new String(buf);
 	}
 }
 
@@ -0,0 +1,245 @@
+package bigint;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/**
+ * This class reads a bulk file of BigIntegers through memory mapping. The file
+ * holds, in order:
+ *    - the int MAGIC and the int VERSION
+ *    - the int number of values, n
+ *    - n + 1 long offsets, from the start of the file, of each value's record
+ *      and of the end of the last record
+ *    - the records, each in the encoding of BigInteger.writeBinary
+ *
+ * open maps the file with FileChannel.map and reads nothing else. get decodes
+ * one record straight from the mapped pages when it is asked for, so restoring
+ * millions of values costs only the pages actually touched.
+ *
+ * Instances are safe to use from several threads once opened.
+ *
+ */
+public class BigIntegerFile implements Closeable {
+
+	/**
+	 * First int of every file ("BIGI")
+	 */
+	static final int MAGIC = 0x42494749;
+
+	/**
+	 * Format version written by write
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * Bytes before the offset table
+	 */
+	private static final int HEADER = 12;
+
+	/**
+	 * Largest mapping, since a MappedByteBuffer is indexed by int
+	 */
+	private static final long MAX_SEGMENT = Integer.MAX_VALUE;
+
+	private final FileChannel channel;
+
+	/**
+	 * Number of values in the file
+	 */
+	private final int size;
+
+	/**
+	 * Mapped pieces of the file, each holding whole records, and the file
+	 * offset at which each one starts
+	 */
+	private final MappedByteBuffer[] segments;
+	private final long[] segmentStarts;
+
+	/**
+	 * Mapping of the header and offset table
+	 */
+	private final MappedByteBuffer index;
+
+	private BigIntegerFile(FileChannel channel) 
+	throws IOException {
+		this.channel = channel;
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		while (header.hasRemaining()) {
+			if (channel.read(header, header.position()) < 0) {
+				break;
+			}
+		}
+		header.flip();
+		if (header.remaining() < HEADER || header.getInt() != MAGIC || header.getInt() != VERSION) {
+			throw new IOException("not a BigInteger file");
+		}
+		size = BigInteger.checkLength(header.getInt());
+		long indexEnd = HEADER + 8L * (size + 1);
+		if (indexEnd > channel.size() || indexEnd > MAX_SEGMENT) {
+			throw new IOException("not a BigInteger file");
+		}
+		index = channel.map(FileChannel.MapMode.READ_ONLY, 0, indexEnd);
+
+		// offsets must not decrease and must stay within the records, so that
+		// mapping and get never reach outside the file
+		long previous = indexEnd, fileSize = channel.size();
+		for (int i = 0; i <= size; i++) {
+			long offset = offset(i);
+			if (offset < previous || offset > fileSize) {
+				throw new IOException("not a BigInteger file");
+			}
+			previous = offset;
+		}
+
+		// split the records into mappings of whole records, each at most MAX_SEGMENT bytes
+		ArrayList<MappedByteBuffer> maps = new ArrayList<>();
+		ArrayList<Long> starts = new ArrayList<>();
+		int first = 0;
+		while (first < size) {
+			long start = offset(first);
+			int last = first;
+			while (last < size && offset(last + 1) - start <= MAX_SEGMENT) {
+				last++;
+			}
+			if (last == first) {
+				throw new IOException("record " + first + " is too large to map");
+			}
+			maps.add(channel.map(FileChannel.MapMode.READ_ONLY, start, offset(last) - start));
+			starts.add(start);
+			first = last;
+		}
+		segments = maps.toArray(new MappedByteBuffer[0]);
+		segmentStarts = new long[starts.size()];
+		for (int i = 0; i < segmentStarts.length; i++) {
+			segmentStarts[i] = starts.get(i);
+		}
+	}
+
+	/**
+	 * Writes values to a new bulk file, replacing any existing file.
+	 *
+	 * @param file File to write
+	 * @param values Values to store
+	 * @throws IOException If writing fails
+	 */
+	public static void write(Path file, BigInteger[] values) 
+	throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(values.length);
+			// the offsets and the records come from the same magnitudes, so they agree
+			int[][] mags = new int[values.length][];
+			long offset = HEADER + 8L * (values.length + 1);
+			for (int i = 0; i < values.length; i++) {
+				mags[i] = values[i].magnitude();
+				out.writeLong(offset);
+				offset += 5 + 4L * mags[i].length;
+			}
+			out.writeLong(offset);
+			for (int i = 0; i < values.length; i++) {
+				BigInteger.writeBinary(out, values[i].negative, mags[i]);
+			}
+		}
+	}
+
+	/**
+	 * Opens a bulk file written by write and maps it into memory.
+	 *
+	 * @param file File to open
+	 * @return Open file
+	 * @throws IOException If the file cannot be read or is not a bulk file
+	 */
+	public static BigIntegerFile open(Path file) 
+	throws IOException {
+		FileChannel channel = FileChannel.open(file);
+		try {
+			return new BigIntegerFile(channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the number of values in the file.
+	 *
+	 * @return Number of values
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Decodes the value at an index from the mapped file.
+	 *
+	 * @param i Index of the value, from 0 to size() - 1
+	 * @return Value, in the packed storage mode, or the compact mode if it has at
+	 *         most 18 digits
+	 * @throws IndexOutOfBoundsException If i is out of range
+	 * @throws IOException If the record is not valid
+	 */
+	public BigInteger get(int i) 
+	throws IOException {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException(Integer.toString(i));
+		}
+		long offset = offset(i);
+		int s = segmentOf(offset);
+		ByteBuffer segment = segments[s];
+		int pos = (int)(offset - segmentStarts[s]);
+		if (offset(i + 1) - offset < 5) {
+			throw new IOException("invalid BigInteger encoding");
+		}
+		boolean negative = segment.get(pos) != 0;
+		int length = BigInteger.checkLength(segment.getInt(pos + 1));
+		if (5 + 4L * length != offset(i + 1) - offset) {
+			throw new IOException("invalid BigInteger encoding");
+		}
+		int[] mag = new int[length];
+		for (int j = 0; j < length; j++) {
+			mag[j] = segment.getInt(pos + 5 + 4 * j);
+		}
+		return BigInteger.fromBinary(negative, mag);
+	}
+
+	/**
+	 * Returns the file offset of record i, or of the end of the records for i == size.
+	 */
+	private long offset(int i) {
+		return index.getLong(HEADER + 8 * i);
+	}
+
+	/**
+	 * Finds the mapping that holds the record starting at a file offset.
+	 */
+	private int segmentOf(long offset) {
+		int lo = 0, hi = segmentStarts.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (segmentStarts[mid] <= offset) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Closes the file. Mapped pages are released when they are garbage collected.
+	 */
+	public void close() 
+	throws IOException {
+		channel.close();
+	}
+}
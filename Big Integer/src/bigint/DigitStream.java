@@ -0,0 +1,138 @@
+package bigint;
+
+import java.util.Arrays;
+
+/**
+ * This class parses an integer that arrives one character at a time, as in
+ * BigInteger.parse(Reader). The input format is the same as for
+ * BigInteger.parse: optional leading and trailing spaces, an optional sign, and
+ * at least one digit.
+ *
+ * Digits are packed as they arrive into groups of 9, Most Significant Digit
+ * first, so the input never has to be held as a String. finish realigns the
+ * groups into base 10^9 limbs (see Limbs) in place.
+ *
+ */
+final class DigitStream {
+
+	/**
+	 * Parser states
+	 */
+	private static final int LEADING = 0, SIGN = 1, DIGITS = 2, TRAILING = 3;
+
+	private int state = LEADING;
+
+	private boolean negative;
+
+	/**
+	 * True once any digit, including a leading zero, has been seen
+	 */
+	private boolean sawDigit;
+
+	/**
+	 * Completed groups of 9 significant digits, Most Significant first
+	 */
+	private int[] groups = new int[16];
+
+	private int count;
+
+	/**
+	 * Group being filled, and the number of digits in it
+	 */
+	private int group, groupDigits;
+
+	/**
+	 * Feeds the next character of the input.
+	 *
+	 * @param c Character
+	 * @throws IllegalArgumentException If the input so far is incorrectly formatted
+	 */
+	void accept(int c)
+	throws IllegalArgumentException {
+		if (c >= '0' && c <= '9') {
+			if (state == TRAILING) {
+				throw new IllegalArgumentException();
+			}
+			state = DIGITS;
+			sawDigit = true;
+			if (c == '0' && count == 0 && groupDigits == 0) { // leading zero
+				return;
+			}
+			group = group * 10 + (c - '0');
+			if (++groupDigits == Limbs.DIGITS) {
+				if (count == groups.length) {
+					groups = Arrays.copyOf(groups, count * 2);
+				}
+				groups[count++] = group;
+				group = 0;
+				groupDigits = 0;
+			}
+		} else if (c <= ' ') { // same characters that String.trim removes
+			if (state == SIGN) {
+				throw new IllegalArgumentException();
+			}
+			if (state == DIGITS) {
+				state = TRAILING;
+			}
+		} else if ((c == '-' || c == '+') && state == LEADING) {
+			state = SIGN;
+			negative = c == '-';
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * Ends the input and returns the parsed integer, in the compact storage mode if
+	 * it has at most BigInteger.COMPACT_PARSE_DIGITS significant digits, as
+	 * BigInteger.parse(String), and in the packed storage mode otherwise. Zero is
+	 * returned with no digits, also as parse(String).
+	 *
+	 * @return Parsed integer
+	 * @throws IllegalArgumentException If the input had no digits
+	 */
+	BigInteger finish()
+	throws IllegalArgumentException {
+		if (!sawDigit) {
+			throw new IllegalArgumentException();
+		}
+		if (count == 0 && groupDigits == 0) {
+			return new BigInteger();
+		}
+		if (count * Limbs.DIGITS + groupDigits <= BigInteger.COMPACT_PARSE_DIGITS) { // as parse(String)
+			long v = 0;
+			for (int i = 0; i < count; i++) {
+				v = v * Limbs.BASE + groups[i];
+			}
+			for (int i = 0; i < groupDigits; i++) {
+				v *= 10;
+			}
+			v += group;
+			return BigInteger.valueOf(negative ? -v : v);
+		}
+		// pad the partial group to 9 digits, then shift the whole digit sequence
+		// right by the padding so the last group is full and the first is partial
+		int[] limbs = groupDigits > 0 ? Arrays.copyOf(groups, count + 1) : Arrays.copyOf(groups, count);
+		int n = limbs.length;
+		if (groupDigits > 0) {
+			int pad = Limbs.DIGITS - groupDigits;
+			int low = 1, high = 1;
+			for (int i = 0; i < pad; i++) {
+				low *= 10;
+			}
+			for (int i = 0; i < groupDigits; i++) {
+				high *= 10;
+			}
+			limbs[n - 1] = group * low;
+			for (int i = n - 1; i > 0; i--) {
+				limbs[i] = (limbs[i - 1] % low) * high + limbs[i] / low;
+			}
+			limbs[0] /= low;
+		}
+		// Most Significant first to Least Significant first
+		for (int i = 0, j = n - 1; i < j; i++, j--) {
+			int t = limbs[i]; limbs[i] = limbs[j]; limbs[j] = t;
+		}
+		return BigInteger.packed(negative, limbs);
+	}
+}
@@ -0,0 +1,254 @@
+package bigint;
+
+import java.util.Arrays;
+
+/**
+ * This class divides packed magnitudes (see Limbs). Short divisors use Knuth's
+ * Algorithm D (The Art of Computer Programming, Vol. 2, 4.3.1) in base 10^9.
+ * Long divisors use Burnikel and Ziegler's recursive division ("Fast Recursive
+ * Division", MPI-I-98-1-022), which splits the work into half size divisions
+ * whose cost is dominated by multiplications, so it runs in the time of
+ * Karatsuba or faster multiplication instead of quadratic time.
+ *
+ * None of the methods modify their input arrays.
+ *
+ */
+final class Division {
+
+	/**
+	 * Divisor length, in limbs, below which Knuth's algorithm is used
+	 */
+	static final int BURNIKEL_ZIEGLER_THRESHOLD = 80;
+
+	/**
+	 * Difference in length between dividend and divisor, in limbs, below which
+	 * Knuth's algorithm is used even for long divisors
+	 */
+	static final int BURNIKEL_ZIEGLER_OFFSET = 40;
+
+	/**
+	 * The magnitude 1
+	 */
+	static final int[] ONE = { 1 };
+
+	// prevent instantiation
+	private Division() { }
+
+	/**
+	 * Divides one magnitude by another.
+	 *
+	 * @param a Dividend magnitude
+	 * @param b Divisor magnitude
+	 * @return Two element array holding the quotient and the remainder magnitudes
+	 * @throws ArithmeticException If b is zero
+	 */
+	static int[][] divideAndRemainder(int[] a, int[] b)
+	throws ArithmeticException {
+		if (b.length == 0) {
+			throw new ArithmeticException("division by zero");
+		}
+		if (Limbs.compare(a, b) < 0) {
+			return new int[][] { Limbs.ZERO, a };
+		}
+		if (b.length < BURNIKEL_ZIEGLER_THRESHOLD || a.length - b.length < BURNIKEL_ZIEGLER_OFFSET) {
+			return knuth(a, b);
+		}
+		return burnikelZiegler(a, b);
+	}
+
+	/**
+	 * Knuth's Algorithm D. Both operands are scaled by a small factor so the top
+	 * limb of the divisor is at least BASE/2, which keeps each trial quotient
+	 * limb at most two too large.
+	 */
+	static int[][] knuth(int[] a, int[] b) {
+		if (Limbs.compare(a, b) < 0) {
+			return new int[][] { Limbs.ZERO, a };
+		}
+		if (b.length == 1) {
+			long rem = remainder(a, b[0]);
+			return new int[][] { Limbs.divide(a, b[0]), rem == 0 ? Limbs.ZERO : new int[] { (int)rem } };
+		}
+		int n = b.length, m = a.length - n;
+		int d = Limbs.BASE / (b[n - 1] + 1);
+		int[] v = multiply(b, d, n);
+		int[] u = multiply(a, d, a.length + 1);
+		int[] q = new int[m + 1];
+		long vTop = v[n - 1], vNext = v[n - 2];
+		for (int j = m; j >= 0; j--) {
+			// estimate the quotient limb from the top two limbs, then correct it
+			long num = (long)u[j + n] * Limbs.BASE + u[j + n - 1];
+			long qhat = num / vTop, rhat = num % vTop;
+			while (qhat >= Limbs.BASE || qhat * vNext > rhat * Limbs.BASE + u[j + n - 2]) {
+				qhat--;
+				rhat += vTop;
+				if (rhat >= Limbs.BASE) {
+					break;
+				}
+			}
+			// multiply and subtract
+			long carry = 0;
+			int borrow = 0;
+			for (int i = 0; i < n; i++) {
+				long p = qhat * v[i] + carry;
+				carry = p / Limbs.BASE;
+				long t = u[i + j] - p % Limbs.BASE - borrow;
+				if (t < 0) {
+					t += Limbs.BASE;
+					borrow = 1;
+				} else {
+					borrow = 0;
+				}
+				u[i + j] = (int)t;
+			}
+			long top = u[j + n] - carry - borrow;
+			if (top < 0) { // qhat was one too large: add the divisor back
+				qhat--;
+				int c = 0;
+				for (int i = 0; i < n; i++) {
+					int s = u[i + j] + v[i] + c;
+					if (s >= Limbs.BASE) {
+						s -= Limbs.BASE;
+						c = 1;
+					} else {
+						c = 0;
+					}
+					u[i + j] = s;
+				}
+				top += c;
+			}
+			u[j + n] = (int)top;
+			q[j] = (int)qhat;
+		}
+		int[] r = Limbs.divide(Limbs.trim(u, n), d);
+		return new int[][] { Limbs.trim(q, q.length), r };
+	}
+
+	/**
+	 * Burnikel-Ziegler division. The divisor is scaled to a block size n = j * 2^k
+	 * limbs with its top limb at least BASE/2, and the dividend is divided one
+	 * block at a time with divide2n1n.
+	 */
+	private static int[][] burnikelZiegler(int[] a, int[] b) {
+		int r = b.length;
+		int m = 1 << (32 - Integer.numberOfLeadingZeros(r / BURNIKEL_ZIEGLER_THRESHOLD));
+		int n = (r + m - 1) / m * m;
+		int shift = n - r;
+		int d = Limbs.BASE / (b[r - 1] + 1);
+		int[] bs = Limbs.trim(multiply(shiftLeft(b, shift), d, n), n);
+		int[] as = shiftLeft(a, shift);
+		as = Limbs.trim(multiply(as, d, as.length + 1), as.length + 1);
+
+		// t blocks, with room for a zero top limb so the first block is below bs
+		int t = Math.max(2, (as.length + n) / n);
+		int[] z = Limbs.slice(as, (t - 2) * n, t * n);
+		int[] q = new int[(t - 1) * n];
+		int[] rem = Limbs.ZERO;
+		for (int i = t - 2; i >= 0; i--) {
+			int[][] qr = divide2n1n(z, bs, n);
+			System.arraycopy(qr[0], 0, q, i * n, qr[0].length);
+			if (i > 0) {
+				z = join(qr[1], n, Limbs.slice(as, (i - 1) * n, i * n));
+			} else {
+				rem = qr[1];
+			}
+		}
+		rem = Limbs.divide(Limbs.slice(rem, shift, rem.length), d);
+		return new int[][] { Limbs.trim(q, q.length), rem };
+	}
+
+	/**
+	 * Divides a by b, where b has n limbs with its top limb at least BASE/2 and
+	 * a is less than b * BASE^n.
+	 */
+	private static int[][] divide2n1n(int[] a, int[] b, int n) {
+		if (n % 2 != 0 || n < BURNIKEL_ZIEGLER_THRESHOLD) {
+			return knuth(a, b);
+		}
+		int half = n / 2;
+		int[][] qr1 = divide3n2n(Limbs.slice(a, half, a.length), b, half);
+		int[][] qr2 = divide3n2n(join(qr1[1], half, Limbs.slice(a, 0, half)), b, half);
+		return new int[][] { join(qr1[0], half, qr2[0]), qr2[1] };
+	}
+
+	/**
+	 * Divides a by b, where b has 2 * half limbs with its top limb at least BASE/2
+	 * and a is less than b * BASE^half.
+	 */
+	private static int[][] divide3n2n(int[] a, int[] b, int half) {
+		int[] b1 = Limbs.slice(b, half, b.length);
+		int[] b2 = Limbs.slice(b, 0, half);
+		int[] a12 = Limbs.slice(a, half, a.length);
+		int[] q, r1;
+		if (Limbs.compare(Limbs.slice(a, 2 * half, a.length), b1) < 0) {
+			int[][] qr = divide2n1n(a12, b1, half);
+			q = qr[0];
+			r1 = qr[1];
+		} else { // q = BASE^half - 1, and r1 = a12 - q * b1
+			q = new int[half];
+			Arrays.fill(q, Limbs.BASE - 1);
+			r1 = Limbs.add(Limbs.subtract(a12, shiftLeft(b1, half)), b1);
+		}
+		int[] x = join(r1, half, Limbs.slice(a, 0, half));
+		int[] p = Limbs.multiply(q, b2);
+		while (Limbs.compare(x, p) < 0) { // at most twice
+			x = Limbs.add(x, b);
+			q = Limbs.subtract(q, ONE);
+		}
+		return new int[][] { q, Limbs.subtract(x, p) };
+	}
+
+	/**
+	 * Returns hi * BASE^k + lo, where lo is less than BASE^k.
+	 */
+	private static int[] join(int[] hi, int k, int[] lo) {
+		if (hi.length == 0) {
+			return lo;
+		}
+		int[] r = new int[k + hi.length];
+		System.arraycopy(lo, 0, r, 0, lo.length);
+		System.arraycopy(hi, 0, r, k, hi.length);
+		return r;
+	}
+
+	/**
+	 * Returns x * BASE^k.
+	 */
+	static int[] shiftLeft(int[] x, int k) {
+		if (k == 0 || x.length == 0) {
+			return x;
+		}
+		int[] r = new int[x.length + k];
+		System.arraycopy(x, 0, r, k, x.length);
+		return r;
+	}
+
+	/**
+	 * Multiplies a magnitude by a small factor into an array of the given length,
+	 * which must be long enough for the product. The result is not trimmed.
+	 */
+	private static int[] multiply(int[] x, int factor, int length) {
+		int[] r = new int[length];
+		long carry = 0;
+		for (int i = 0; i < x.length; i++) {
+			long t = (long)x[i] * factor + carry;
+			r[i] = (int)(t % Limbs.BASE);
+			carry = t / Limbs.BASE;
+		}
+		if (carry != 0) {
+			r[x.length] = (int)carry;
+		}
+		return r;
+	}
+
+	/**
+	 * Returns the remainder of a magnitude divided by a small positive divisor.
+	 */
+	static long remainder(int[] a, int divisor) {
+		long rem = 0;
+		for (int i = a.length - 1; i >= 0; i--) {
+			rem = (rem * Limbs.BASE + a[i]) % divisor;
+		}
+		return rem;
+	}
+}
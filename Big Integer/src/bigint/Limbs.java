@@ -0,0 +1,527 @@
+package bigint;
+
+import java.util.Arrays;
+
+/**
+ * This class holds the arithmetic on packed magnitudes used by the packed storage
+ * mode of BigInteger. A magnitude is an int array of base 10^9 limbs with the
+ * Least Significant Limb in the FIRST slot. For instance, the integer 12345678901234
+ * would be stored as:
+ *    [678901234, 12345]
+ *
+ * Insignificant limbs are not stored, so the last slot is never zero, and the
+ * value 0 is the empty array.
+ *
+ * None of the methods modify their input arrays.
+ *
+ */
+final class Limbs {
+
+	/**
+	 * Radix of one limb
+	 */
+	static final int BASE = 1000000000;
+
+	/**
+	 * Number of decimal digits held in one limb
+	 */
+	static final int DIGITS = 9;
+
+	/**
+	 * The zero magnitude
+	 */
+	static final int[] ZERO = new int[0];
+
+	/**
+	 * Operand length, in limbs, at which multiply switches from the schoolbook
+	 * method to Karatsuba
+	 */
+	static final int KARATSUBA_THRESHOLD = 40;
+
+	/**
+	 * Operand length, in limbs, at which multiply switches from Karatsuba to Toom-3
+	 */
+	static final int TOOM3_THRESHOLD = 160;
+
+	/**
+	 * Operand length, in limbs, at which multiply switches from Toom-3 to the
+	 * number-theoretic transform (see Ntt). Set through BigInteger.setNttThreshold.
+	 */
+	static volatile int nttThreshold = 6000;
+
+	// prevent instantiation
+	private Limbs() { }
+
+	/**
+	 * Packs a digit linked list (Least Significant Digit first) into limbs.
+	 *
+	 * @param front First node of the digit list, null for zero
+	 * @param numDigits Number of digits in the list
+	 * @return Packed magnitude
+	 */
+	static int[] fromDigits(DigitNode front, int numDigits) {
+		if (front == null) {
+			return ZERO;
+		}
+		int[] mag = new int[(numDigits + DIGITS - 1) / DIGITS];
+		int len = 0, limb = 0, scale = 1, count = 0;
+		for (DigitNode curr = front; curr != null; curr = curr.next) {
+			limb += curr.digit * scale;
+			scale *= 10;
+			if (++count == DIGITS) {
+				if (len == mag.length) {
+					mag = grow(mag, len + 1);
+				}
+				mag[len++] = limb;
+				limb = 0;
+				scale = 1;
+				count = 0;
+			}
+		}
+		if (count > 0) {
+			if (len == mag.length) {
+				mag = grow(mag, len + 1);
+			}
+			mag[len++] = limb;
+		}
+		return trim(mag, len);
+	}
+
+	/**
+	 * Packs a non-negative long, or Long.MIN_VALUE as its magnitude 2^63.
+	 *
+	 * @param value Value to pack
+	 * @return Packed magnitude
+	 */
+	static int[] fromLong(long value) {
+		if (value == 0) {
+			return ZERO;
+		}
+		if (value == Long.MIN_VALUE) {
+			return new int[] { 854775808, 223372036, 9 };
+		}
+		int len = value < BASE ? 1 : value < (long)BASE * BASE ? 2 : 3;
+		int[] mag = new int[len];
+		for (int i = 0; i < len; i++) {
+			mag[i] = (int)(value % BASE);
+			value /= BASE;
+		}
+		return mag;
+	}
+
+	/**
+	 * Unpacks limbs into a digit linked list, Least Significant Digit first.
+	 *
+	 * @param mag Packed magnitude
+	 * @return First node of the digit list, null for zero
+	 */
+	static DigitNode toDigits(int[] mag) {
+		if (mag.length == 0) {
+			return null;
+		}
+		DigitNode front = null, tail = null;
+		for (int i = 0; i < mag.length; i++) {
+			int limb = mag[i];
+			int count = i == mag.length - 1 ? digitCount(limb) : DIGITS;
+			for (int j = 0; j < count; j++) {
+				DigitNode node = new DigitNode(limb % 10, null);
+				limb /= 10;
+				if (tail == null) {
+					front = node;
+				} else {
+					tail.next = node;
+				}
+				tail = node;
+			}
+		}
+		return front;
+	}
+
+	/**
+	 * Packs a run of decimal digit characters, Most Significant Digit first.
+	 * Leading zeros are allowed.
+	 *
+	 * @param str String holding the digits
+	 * @param from Index of the first digit
+	 * @param to Index one past the last digit
+	 * @return Packed magnitude
+	 * @throws IllegalArgumentException If a character in the run is not a digit
+	 */
+	static int[] parse(String str, int from, int to)
+	throws IllegalArgumentException {
+		while (from < to && str.charAt(from) == '0') {
+			from++;
+		}
+		int[] mag = new int[(to - from + DIGITS - 1) / DIGITS];
+		int len = 0;
+		for (int end = to; end > from; end -= DIGITS) {
+			int start = Math.max(from, end - DIGITS);
+			int limb = 0;
+			for (int i = start; i < end; i++) {
+				int d = str.charAt(i) - '0';
+				if (d < 0 || d > 9) {
+					throw new IllegalArgumentException();
+				}
+				limb = limb * 10 + d;
+			}
+			mag[len++] = limb;
+		}
+		return mag;
+	}
+
+	/**
+	 * Returns the number of decimal digits in a magnitude.
+	 *
+	 * @param mag Packed magnitude
+	 * @return Number of digits, 0 for zero
+	 */
+	static int digitCount(int[] mag) {
+		if (mag.length == 0) {
+			return 0;
+		}
+		return (mag.length - 1) * DIGITS + digitCount(mag[mag.length - 1]);
+	}
+
+	private static int digitCount(int limb) {
+		int count = 1;
+		while (limb >= 10) {
+			limb /= 10;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the decimal digits of a non-zero magnitude into a character array,
+	 * Most Significant Digit first, ending just before index end.
+	 *
+	 * @param mag Packed magnitude
+	 * @param buf Character array to fill
+	 * @param end Index one past the last digit to write
+	 */
+	static void toChars(int[] mag, char[] buf, int end) {
+		int pos = end;
+		for (int i = 0; i < mag.length; i++) {
+			int limb = mag[i];
+			if (i == mag.length - 1) {
+				do {
+					buf[--pos] = (char)('0' + limb % 10);
+					limb /= 10;
+				} while (limb != 0);
+			} else {
+				for (int j = 0; j < DIGITS; j++) {
+					buf[--pos] = (char)('0' + limb % 10);
+					limb /= 10;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compares two magnitudes.
+	 *
+	 * @param a First magnitude
+	 * @param b Second magnitude
+	 * @return Negative, zero or positive as a is less than, equal to or greater than b
+	 */
+	static int compare(int[] a, int[] b) {
+		if (a.length != b.length) {
+			return a.length < b.length ? -1 : 1;
+		}
+		for (int i = a.length - 1; i >= 0; i--) {
+			if (a[i] != b[i]) {
+				return a[i] < b[i] ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Adds two magnitudes.
+	 *
+	 * @param a First magnitude
+	 * @param b Second magnitude
+	 * @return New magnitude a + b
+	 */
+	static int[] add(int[] a, int[] b) {
+		if (a.length < b.length) {
+			int[] t = a; a = b; b = t;
+		}
+		int[] sum = new int[a.length + 1];
+		int carry = 0;
+		for (int i = 0; i < a.length; i++) {
+			int s = a[i] + (i < b.length ? b[i] : 0) + carry;
+			if (s >= BASE) {
+				s -= BASE;
+				carry = 1;
+			} else {
+				carry = 0;
+			}
+			sum[i] = s;
+		}
+		sum[a.length] = carry;
+		return trim(sum, sum.length);
+	}
+
+	/**
+	 * Subtracts the smaller magnitude from the larger one.
+	 *
+	 * @param a Larger magnitude
+	 * @param b Smaller magnitude, must not exceed a
+	 * @return New magnitude a - b
+	 */
+	static int[] subtract(int[] a, int[] b) {
+		int[] diff = new int[a.length];
+		int borrow = 0;
+		for (int i = 0; i < a.length; i++) {
+			int d = a[i] - (i < b.length ? b[i] : 0) - borrow;
+			if (d < 0) {
+				d += BASE;
+				borrow = 1;
+			} else {
+				borrow = 0;
+			}
+			diff[i] = d;
+		}
+		return trim(diff, diff.length);
+	}
+
+	/**
+	 * Multiplies two magnitudes. The algorithm is picked by the length of the
+	 * shorter operand: schoolbook below KARATSUBA_THRESHOLD limbs, Karatsuba
+	 * below TOOM3_THRESHOLD limbs, Toom-3 below nttThreshold limbs, and the
+	 * number-theoretic transform above that. Products too long for a single
+	 * transform fall back to Toom-3, whose pieces then use the transform.
+	 *
+	 * @param a First magnitude
+	 * @param b Second magnitude
+	 * @return New magnitude a * b
+	 */
+	static int[] multiply(int[] a, int[] b) {
+		if (a.length == 0 || b.length == 0) {
+			return ZERO;
+		}
+		int min = Math.min(a.length, b.length);
+		if (min < KARATSUBA_THRESHOLD) {
+			return schoolbook(a, b);
+		} else if (min < TOOM3_THRESHOLD) {
+			return karatsuba(a, b);
+		} else if (min >= nttThreshold && Ntt.fits(a.length, b.length)) {
+			return Ntt.multiply(a, b);
+		} else {
+			return toom3(a, b);
+		}
+	}
+
+	/**
+	 * Multiplies two non-zero magnitudes with the schoolbook method.
+	 */
+	static int[] schoolbook(int[] a, int[] b) {
+		int[] product = new int[a.length + b.length];
+		for (int i = 0; i < a.length; i++) {
+			long ai = a[i];
+			if (ai == 0) {
+				continue;
+			}
+			long carry = 0;
+			for (int j = 0; j < b.length; j++) {
+				long t = ai * b[j] + product[i + j] + carry;
+				product[i + j] = (int)(t % BASE);
+				carry = t / BASE;
+			}
+			product[i + b.length] = (int)carry;
+		}
+		return trim(product, product.length);
+	}
+
+	/**
+	 * Multiplies two magnitudes by splitting each into a low and a high half:
+	 *    (a1 x + a0)(b1 x + b0) = z2 x^2 + z1 x + z0
+	 * where z1 = (a0 + a1)(b0 + b1) - z2 - z0, so only three half size
+	 * products are needed.
+	 */
+	private static int[] karatsuba(int[] a, int[] b) {
+		int half = (Math.max(a.length, b.length) + 1) / 2;
+		int[] a0 = slice(a, 0, half), a1 = slice(a, half, a.length);
+		int[] b0 = slice(b, 0, half), b1 = slice(b, half, b.length);
+		int[] z0 = multiply(a0, b0);
+		int[] z2 = multiply(a1, b1);
+		int[] z1 = subtract(subtract(multiply(add(a0, a1), add(b0, b1)), z0), z2);
+		int[] product = new int[a.length + b.length];
+		addInto(product, z0, 0);
+		addInto(product, z1, half);
+		addInto(product, z2, 2 * half);
+		return trim(product, product.length);
+	}
+
+	/**
+	 * Multiplies two magnitudes by splitting each into three parts and
+	 * evaluating the part polynomials at 0, 1, -1, -2 and infinity, so only
+	 * five third size products are needed. Interpolation follows Bodrato's
+	 * sequence, which needs only exact divisions by 2 and 3.
+	 */
+	private static int[] toom3(int[] a, int[] b) {
+		int k = (Math.max(a.length, b.length) + 2) / 3;
+		int[] a0 = slice(a, 0, k), a1 = slice(a, k, 2 * k), a2 = slice(a, 2 * k, a.length);
+		int[] b0 = slice(b, 0, k), b1 = slice(b, k, 2 * k), b2 = slice(b, 2 * k, b.length);
+
+		// evaluation
+		Signed pm = Signed.of(add(a0, a2));
+		Signed p1 = pm.add(Signed.of(a1));
+		Signed pm1 = pm.subtract(Signed.of(a1));
+		Signed pm2 = pm1.add(Signed.of(a2)).shiftLeft().subtract(Signed.of(a0));
+		Signed qm = Signed.of(add(b0, b2));
+		Signed q1 = qm.add(Signed.of(b1));
+		Signed qm1 = qm.subtract(Signed.of(b1));
+		Signed qm2 = qm1.add(Signed.of(b2)).shiftLeft().subtract(Signed.of(b0));
+
+		// pointwise products
+		Signed r0 = Signed.of(multiply(a0, b0));
+		Signed r1 = p1.multiply(q1);
+		Signed rm1 = pm1.multiply(qm1);
+		Signed rm2 = pm2.multiply(qm2);
+		Signed rinf = Signed.of(multiply(a2, b2));
+
+		// interpolation
+		Signed r3 = rm2.subtract(r1).divide(3);
+		r1 = r1.subtract(rm1).divide(2);
+		Signed r2 = rm1.subtract(r0);
+		r3 = r2.subtract(r3).divide(2).add(rinf.shiftLeft());
+		r2 = r2.add(r1).subtract(rinf);
+		r1 = r1.subtract(r3);
+
+		int[] product = new int[a.length + b.length];
+		addInto(product, r0.mag, 0);
+		addInto(product, r1.mag, k);
+		addInto(product, r2.mag, 2 * k);
+		addInto(product, r3.mag, 3 * k);
+		addInto(product, rinf.mag, 4 * k);
+		return trim(product, product.length);
+	}
+
+	/**
+	 * Adds a magnitude into an accumulator, starting at limb offset. The accumulator
+	 * must be long enough to hold the sum.
+	 *
+	 * @param acc Accumulator, modified in place
+	 * @param x Magnitude to add
+	 * @param offset Limb position at which x is added
+	 */
+	static void addInto(int[] acc, int[] x, int offset) {
+		int carry = 0;
+		int i = 0;
+		for (; i < x.length; i++) {
+			int s = acc[offset + i] + x[i] + carry;
+			if (s >= BASE) {
+				s -= BASE;
+				carry = 1;
+			} else {
+				carry = 0;
+			}
+			acc[offset + i] = s;
+		}
+		for (int j = offset + i; carry != 0; j++) {
+			int s = acc[j] + 1;
+			if (s == BASE) {
+				acc[j] = 0;
+			} else {
+				acc[j] = s;
+				carry = 0;
+			}
+		}
+	}
+
+	/**
+	 * Divides a magnitude by a small positive divisor.
+	 *
+	 * @param a Dividend magnitude
+	 * @param divisor Divisor, between 1 and BASE
+	 * @return New magnitude a / divisor, rounded down
+	 */
+	static int[] divide(int[] a, int divisor) {
+		int[] quotient = new int[a.length];
+		long rem = 0;
+		for (int i = a.length - 1; i >= 0; i--) {
+			long cur = rem * BASE + a[i];
+			quotient[i] = (int)(cur / divisor);
+			rem = cur % divisor;
+		}
+		return trim(quotient, quotient.length);
+	}
+
+	/**
+	 * Returns limbs from..to of a magnitude as a trimmed magnitude of its own.
+	 */
+	static int[] slice(int[] a, int from, int to) {
+		to = Math.min(to, a.length);
+		if (from >= to) {
+			return ZERO;
+		}
+		return trim(Arrays.copyOfRange(a, from, to), to - from);
+	}
+
+	/**
+	 * A signed magnitude, for the intermediate values of Toom-3 that can go negative.
+	 */
+	private static final class Signed {
+		final boolean negative;
+		final int[] mag;
+
+		Signed(boolean negative, int[] mag) {
+			this.negative = negative && mag.length > 0;
+			this.mag = mag;
+		}
+
+		static Signed of(int[] mag) {
+			return new Signed(false, mag);
+		}
+
+		Signed add(Signed o) {
+			if (negative == o.negative) {
+				return new Signed(negative, Limbs.add(mag, o.mag));
+			}
+			int cmp = compare(mag, o.mag);
+			if (cmp >= 0) {
+				return new Signed(negative, Limbs.subtract(mag, o.mag));
+			}
+			return new Signed(o.negative, Limbs.subtract(o.mag, mag));
+		}
+
+		Signed subtract(Signed o) {
+			return add(new Signed(!o.negative, o.mag));
+		}
+
+		Signed multiply(Signed o) {
+			return new Signed(negative != o.negative, Limbs.multiply(mag, o.mag));
+		}
+
+		Signed shiftLeft() {
+			return new Signed(negative, Limbs.add(mag, mag));
+		}
+
+		Signed divide(int divisor) {
+			return new Signed(negative, Limbs.divide(mag, divisor));
+		}
+	}
+
+	/**
+	 * Drops insignificant limbs from the first len slots of an array.
+	 *
+	 * @param mag Array of limbs
+	 * @param len Number of slots in use
+	 * @return mag itself if it is already trimmed, otherwise a trimmed copy
+	 */
+	static int[] trim(int[] mag, int len) {
+		while (len > 0 && mag[len - 1] == 0) {
+			len--;
+		}
+		if (len == mag.length) {
+			return mag;
+		}
+		return len == 0 ? ZERO : Arrays.copyOf(mag, len);
+	}
+
+	private static int[] grow(int[] mag, int minLen) {
+		return Arrays.copyOf(mag, Math.max(minLen, mag.length * 2));
+	}
+}
@@ -0,0 +1,297 @@
+package bigint;
+
+import java.util.Arrays;
+
+/**
+ * This class encapsulates a mutable big integer accumulator. Values are added
+ * into a reusable, growable buffer of base 10^9 limbs (see Limbs), so summing
+ * many integers produces no garbage once the buffer has grown to the size of
+ * the running total.
+ *
+ * Packed and compact operands (see BigInteger.parsePacked and BigInteger.valueOf)
+ * are read without allocating; linked list operands are packed into a temporary
+ * array first.
+ *
+ * An accumulator is not thread safe.
+ *
+ */
+public class MutableBigInteger {
+
+	/**
+	 * True if the accumulated value is negative
+	 */
+	boolean negative;
+
+	/**
+	 * Limbs of the accumulated magnitude, Least Significant Limb first. Only the
+	 * first len slots are significant, and every slot from len on is zero.
+	 */
+	int[] mag;
+
+	/**
+	 * Number of significant limbs in mag, 0 for zero
+	 */
+	int len;
+
+	/**
+	 * Reusable limb arrays of lengths 1 to 3 for the magnitudes of up to two
+	 * compact operands, indexed by operand * 3 + length - 1
+	 */
+	private final int[][] scratch = new int[6][];
+
+	/**
+	 * Initializes this accumulator to zero.
+	 */
+	public MutableBigInteger() {
+		negative = false;
+		mag = new int[4];
+		len = 0;
+	}
+
+	/**
+	 * Initializes this accumulator to a value.
+	 *
+	 * @param value Initial value
+	 */
+	public MutableBigInteger(BigInteger value) {
+		this();
+		addTo(value);
+	}
+
+	/**
+	 * Adds a value to this accumulator, in place.
+	 *
+	 * @param value Value to add
+	 * @return This accumulator
+	 */
+	public MutableBigInteger addTo(BigInteger value) {
+		add(value.negative, magnitude(value, 0));
+		return this;
+	}
+
+	/**
+	 * Adds a long value to this accumulator, in place, without allocating.
+	 *
+	 * @param value Value to add
+	 * @return This accumulator
+	 */
+	public MutableBigInteger addTo(long value) {
+		add(value < 0, magnitude(value, 0));
+		return this;
+	}
+
+	/**
+	 * Subtracts a value from this accumulator, in place.
+	 *
+	 * @param value Value to subtract
+	 * @return This accumulator
+	 */
+	public MutableBigInteger subtractFrom(BigInteger value) {
+		add(!value.negative, magnitude(value, 0));
+		return this;
+	}
+
+	/**
+	 * Adds the product of two values to this accumulator, in place. When the product
+	 * has the sign of the accumulated value and the operands are short enough for
+	 * schoolbook multiplication, the partial products are added straight into the
+	 * buffer and no product is allocated.
+	 *
+	 * @param first First factor
+	 * @param second Second factor
+	 * @return This accumulator
+	 */
+	public MutableBigInteger multiplyAccumulate(BigInteger first, BigInteger second) {
+		int[] a = magnitude(first, 0);
+		int[] b = magnitude(second, 1);
+		if (a.length == 0 || b.length == 0) {
+			return this;
+		}
+		boolean productNegative = first.negative != second.negative;
+		if ((len == 0 || productNegative == negative)
+				&& Math.min(a.length, b.length) < Limbs.KARATSUBA_THRESHOLD) {
+			negative = productNegative;
+			ensureCapacity(Math.max(len, a.length + b.length) + 1);
+			for (int i = 0; i < a.length; i++) {
+				long ai = a[i];
+				if (ai == 0) {
+					continue;
+				}
+				long carry = 0;
+				for (int j = 0; j < b.length; j++) {
+					long t = ai * b[j] + mag[i + j] + carry;
+					mag[i + j] = (int)(t % Limbs.BASE);
+					carry = t / Limbs.BASE;
+				}
+				for (int k = i + b.length; carry != 0; k++) {
+					long t = mag[k] + carry;
+					mag[k] = (int)(t % Limbs.BASE);
+					carry = t / Limbs.BASE;
+				}
+			}
+			len = Math.max(len, a.length + b.length) + 1;
+			trim();
+		} else {
+			add(productNegative, Limbs.multiply(a, b));
+		}
+		return this;
+	}
+
+	/**
+	 * Resets this accumulator to zero, keeping its buffer.
+	 *
+	 * @return This accumulator
+	 */
+	public MutableBigInteger clear() {
+		Arrays.fill(mag, 0, len, 0);
+		len = 0;
+		negative = false;
+		return this;
+	}
+
+	/**
+	 * Tells if the accumulated value is zero.
+	 *
+	 * @return True if zero, false if not
+	 */
+	public boolean isZero() {
+		return len == 0;
+	}
+
+	/**
+	 * Returns the accumulated value as a new BigInteger in the packed storage mode.
+	 *
+	 * @return Accumulated value
+	 */
+	public BigInteger toBigInteger() {
+		return BigInteger.packed(negative, len == 0 ? Limbs.ZERO : Arrays.copyOf(mag, len));
+	}
+
+	/**
+	 * Adds a signed magnitude to the accumulated value, in place.
+	 */
+	void add(boolean xNegative, int[] x) {
+		if (x.length == 0) {
+			return;
+		}
+		if (len == 0 || xNegative == negative) {
+			negative = xNegative;
+			ensureCapacity(Math.max(len, x.length) + 1);
+			Limbs.addInto(mag, x, 0);
+			len = Math.max(len, x.length) + 1;
+			trim();
+			return;
+		}
+		int cmp = compareTo(x);
+		if (cmp == 0) {
+			clear();
+		} else if (cmp > 0) { // |this| > |x|: this = this - x
+			int borrow = 0;
+			for (int i = 0; i < len && (i < x.length || borrow != 0); i++) {
+				int d = mag[i] - (i < x.length ? x[i] : 0) - borrow;
+				if (d < 0) {
+					d += Limbs.BASE;
+					borrow = 1;
+				} else {
+					borrow = 0;
+				}
+				mag[i] = d;
+			}
+			trim();
+		} else { // |this| < |x|: this = x - this, and the sign flips
+			ensureCapacity(x.length);
+			int borrow = 0;
+			for (int i = 0; i < x.length; i++) {
+				int d = x[i] - mag[i] - borrow;
+				if (d < 0) {
+					d += Limbs.BASE;
+					borrow = 1;
+				} else {
+					borrow = 0;
+				}
+				mag[i] = d;
+			}
+			len = x.length;
+			negative = xNegative;
+			trim();
+		}
+	}
+
+	/**
+	 * Returns the magnitude of an operand. For a compact operand this is one of the
+	 * scratch arrays of the given operand slot, valid until the next call.
+	 */
+	private int[] magnitude(BigInteger value, int operand) {
+		if (!value.compact) {
+			return value.magnitude();
+		}
+		return magnitude(value.value, operand);
+	}
+
+	/**
+	 * Returns the magnitude of a long in one of the scratch arrays of the given
+	 * operand slot, valid until the next call.
+	 */
+	private int[] magnitude(long value, int operand) {
+		// Math.abs(Long.MIN_VALUE) stays negative, so v is read as unsigned
+		long v = Math.abs(value);
+		if (v == 0) {
+			return Limbs.ZERO;
+		}
+		int length = Long.compareUnsigned(v, Limbs.BASE) < 0 ? 1
+				: Long.compareUnsigned(v, (long)Limbs.BASE * Limbs.BASE) < 0 ? 2 : 3;
+		int slot = operand * 3 + length - 1;
+		if (scratch[slot] == null) {
+			scratch[slot] = new int[length];
+		}
+		int[] mag = scratch[slot];
+		for (int i = 0; i < length; i++) {
+			mag[i] = (int)Long.remainderUnsigned(v, Limbs.BASE);
+			v = Long.divideUnsigned(v, Limbs.BASE);
+		}
+		return mag;
+	}
+
+	/**
+	 * Compares the accumulated magnitude with a magnitude.
+	 */
+	private int compareTo(int[] x) {
+		if (len != x.length) {
+			return len < x.length ? -1 : 1;
+		}
+		for (int i = len - 1; i >= 0; i--) {
+			if (mag[i] != x[i]) {
+				return mag[i] < x[i] ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Grows the buffer, if needed, to hold at least capacity limbs.
+	 */
+	private void ensureCapacity(int capacity) {
+		if (mag.length < capacity) {
+			mag = Arrays.copyOf(mag, Math.max(capacity, mag.length * 2));
+		}
+	}
+
+	/**
+	 * Drops insignificant limbs from len. Zero is never negative.
+	 */
+	private void trim() {
+		while (len > 0 && mag[len - 1] == 0) {
+			len--;
+		}
+		if (len == 0) {
+			negative = false;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return toBigInteger().toString();
+	}
+}
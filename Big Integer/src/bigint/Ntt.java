@@ -0,0 +1,187 @@
+package bigint;
+
+/**
+ * This class multiplies packed magnitudes (see Limbs) with a number-theoretic
+ * transform. Each base 10^9 limb is split into three base 1000 digits, the digit
+ * sequences are convolved modulo two NTT-friendly primes, and the exact
+ * convolution is recovered with the Chinese Remainder Theorem before carrying.
+ *
+ * The cost is O(n log n) in the number of digits, so this is used for operands
+ * that are too long even for Toom-3 (see Limbs.multiply).
+ *
+ */
+final class Ntt {
+
+	/**
+	 * First prime, 119 * 2^23 + 1, with primitive root 3
+	 */
+	private static final long P1 = 998244353L;
+
+	/**
+	 * Second prime, 7 * 2^26 + 1, with primitive root 3
+	 */
+	private static final long P2 = 469762049L;
+
+	/**
+	 * Primitive root of both primes
+	 */
+	private static final long ROOT = 3;
+
+	/**
+	 * Inverse of P1 modulo P2, for recombining the two residues
+	 */
+	private static final long P1_INV_P2 = pow(P1 % P2, P2 - 2, P2);
+
+	/**
+	 * Longest transform both primes support (P1 has only 2^23 roots of unity)
+	 */
+	static final int MAX_LENGTH = 1 << 23;
+
+	/**
+	 * Radix of one transform digit, and transform digits per limb
+	 */
+	private static final int DIGIT_BASE = 1000, DIGITS_PER_LIMB = 3;
+
+	// prevent instantiation
+	private Ntt() { }
+
+	/**
+	 * Tells if the product of two magnitudes fits within the longest transform.
+	 *
+	 * With at most 2^22 digits below 1000 in the shorter operand, every convolution
+	 * term is below 2^22 * 999^2 < P1 * P2, so the recombined value is exact.
+	 *
+	 * @param aLength Limbs in first magnitude
+	 * @param bLength Limbs in second magnitude
+	 * @return True if multiply can be used
+	 */
+	static boolean fits(int aLength, int bLength) {
+		return (long)(aLength + bLength) * DIGITS_PER_LIMB <= MAX_LENGTH;
+	}
+
+	/**
+	 * Multiplies two non-zero magnitudes whose lengths pass fits.
+	 *
+	 * @param a First magnitude
+	 * @param b Second magnitude
+	 * @return New magnitude a * b
+	 */
+	static int[] multiply(int[] a, int[] b) {
+		int na = a.length * DIGITS_PER_LIMB, nb = b.length * DIGITS_PER_LIMB;
+		int n = Integer.highestOneBit(na + nb - 1);
+		if (n < na + nb - 1) {
+			n <<= 1;
+		}
+		long[] fa1 = split(a, n), fb1 = split(b, n);
+		long[] fa2 = fa1.clone(), fb2 = fb1.clone();
+
+		convolve(fa1, fb1, P1);
+		convolve(fa2, fb2, P2);
+
+		// recombine, carry in base 1000, and regroup into base 10^9 limbs
+		int[] product = new int[a.length + b.length];
+		long carry = 0;
+		int limb = 0, scale = 1;
+		for (int i = 0; i < na + nb; i++) {
+			long value = carry;
+			if (i < n) {
+				long r1 = fa1[i], r2 = fa2[i];
+				long k = ((r2 - r1 % P2 + P2) % P2) * P1_INV_P2 % P2;
+				value += r1 + P1 * k;
+			}
+			limb += (int)(value % DIGIT_BASE) * scale;
+			carry = value / DIGIT_BASE;
+			scale *= DIGIT_BASE;
+			if (i % DIGITS_PER_LIMB == DIGITS_PER_LIMB - 1) {
+				product[i / DIGITS_PER_LIMB] = limb;
+				limb = 0;
+				scale = 1;
+			}
+		}
+		return Limbs.trim(product, product.length);
+	}
+
+	/**
+	 * Splits limbs into base 1000 digits, Least Significant Digit first, in an
+	 * array of transform length n.
+	 */
+	private static long[] split(int[] mag, int n) {
+		long[] digits = new long[n];
+		for (int i = 0; i < mag.length; i++) {
+			int limb = mag[i];
+			for (int j = 0; j < DIGITS_PER_LIMB; j++) {
+				digits[i * DIGITS_PER_LIMB + j] = limb % DIGIT_BASE;
+				limb /= DIGIT_BASE;
+			}
+		}
+		return digits;
+	}
+
+	/**
+	 * Replaces a with the cyclic convolution of a and b modulo p. Overwrites b.
+	 */
+	private static void convolve(long[] a, long[] b, long p) {
+		transform(a, p, false);
+		transform(b, p, false);
+		for (int i = 0; i < a.length; i++) {
+			a[i] = a[i] * b[i] % p;
+		}
+		transform(a, p, true);
+	}
+
+	/**
+	 * In-place iterative Cooley-Tukey transform modulo p of a power of two length.
+	 */
+	private static void transform(long[] a, long p, boolean inverse) {
+		int n = a.length;
+		for (int i = 1, j = 0; i < n; i++) {
+			int bit = n >> 1;
+			for (; (j & bit) != 0; bit >>= 1) {
+				j ^= bit;
+			}
+			j ^= bit;
+			if (i < j) {
+				long t = a[i]; a[i] = a[j]; a[j] = t;
+			}
+		}
+		long[] roots = new long[Math.max(1, n / 2)];
+		for (int len = 2; len <= n; len <<= 1) {
+			long w = pow(ROOT, (p - 1) / len, p);
+			if (inverse) {
+				w = pow(w, p - 2, p);
+			}
+			int half = len / 2;
+			roots[0] = 1;
+			for (int k = 1; k < half; k++) {
+				roots[k] = roots[k - 1] * w % p;
+			}
+			for (int i = 0; i < n; i += len) {
+				for (int k = 0; k < half; k++) {
+					long u = a[i + k];
+					long v = a[i + k + half] * roots[k] % p;
+					a[i + k] = u + v < p ? u + v : u + v - p;
+					a[i + k + half] = u - v >= 0 ? u - v : u - v + p;
+				}
+			}
+		}
+		if (inverse) {
+			long nInv = pow(n, p - 2, p);
+			for (int i = 0; i < n; i++) {
+				a[i] = a[i] * nInv % p;
+			}
+		}
+	}
+
+	private static long pow(long base, long exp, long mod) {
+		long result = 1;
+		base %= mod;
+		while (exp > 0) {
+			if ((exp & 1) == 1) {
+				result = result * base % mod;
+			}
+			base = base * base % mod;
+			exp >>= 1;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,71 @@
+package bigint;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class multiplies packed magnitudes (see Limbs) on a ForkJoinPool. The
+ * operands are split as in Karatsuba multiplication, the three half size
+ * products are computed as independent subtasks, and the carries are merged
+ * once all three are done. Below CUTOFF limbs the product is computed on the
+ * current thread with Limbs.multiply.
+ *
+ */
+final class ParallelMultiply extends RecursiveTask<int[]> {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Length of the shorter operand, in limbs, below which a product is not split
+	 */
+	static final int CUTOFF = 400;
+
+	/**
+	 * Operands of this task
+	 */
+	private final int[] a, b;
+
+	ParallelMultiply(int[] a, int[] b) {
+		this.a = a;
+		this.b = b;
+	}
+
+	/**
+	 * Multiplies two magnitudes using the common ForkJoinPool.
+	 *
+	 * @param a First magnitude
+	 * @param b Second magnitude
+	 * @return New magnitude a * b
+	 */
+	static int[] multiply(int[] a, int[] b) {
+		if (Math.min(a.length, b.length) < CUTOFF) {
+			return Limbs.multiply(a, b);
+		}
+		return ForkJoinPool.commonPool().invoke(new ParallelMultiply(a, b));
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.RecursiveTask#compute()
+	 */
+	protected int[] compute() {
+		if (Math.min(a.length, b.length) < CUTOFF) {
+			return Limbs.multiply(a, b);
+		}
+		int half = (Math.max(a.length, b.length) + 1) / 2;
+		int[] a0 = Limbs.slice(a, 0, half), a1 = Limbs.slice(a, half, a.length);
+		int[] b0 = Limbs.slice(b, 0, half), b1 = Limbs.slice(b, half, b.length);
+		ParallelMultiply low = new ParallelMultiply(a0, b0);
+		ParallelMultiply high = new ParallelMultiply(a1, b1);
+		low.fork();
+		high.fork();
+		int[] mid = new ParallelMultiply(Limbs.add(a0, a1), Limbs.add(b0, b1)).compute();
+		int[] z2 = high.join();
+		int[] z0 = low.join();
+		int[] z1 = Limbs.subtract(Limbs.subtract(mid, z0), z2);
+		int[] product = new int[a.length + b.length];
+		Limbs.addInto(product, z0, 0);
+		Limbs.addInto(product, z1, half);
+		Limbs.addInto(product, z2, 2 * half);
+		return Limbs.trim(product, product.length);
+	}
+}
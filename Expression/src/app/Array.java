@@ -1,9 +1,25 @@
 package app;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import structures.IntIntMap;
+
 /**
  * This class holds a (name, array of integer values) pair for an array. 
  * The name is a sequence of one or more letters. 
  * 
+ * The items are held in one of three ways, chosen by allocate from the length
+ * and the number of items expected to be set:
+ *    - dense, in the values int array, for most arrays
+ *    - sparse, in a primitive hash map holding only the items set, for long
+ *      arrays with few items set (the others are 0)
+ *    - off-heap, in direct buffers outside the Java heap, for very long arrays
+ *      with many items set
+ * get, set and length work with all three. Assigning values directly, as
+ * before, makes the array dense.
+ * 
  * @author ru-nb-cs112
  *
  */
@@ -15,9 +31,40 @@ public class Array {
 	public String name;
 	
 	/**
-	 * Array of integer values
+	 * Array of integer values, if dense; null if sparse or off-heap
 	 */
 	public int[] values;
+
+	/**
+	 * Smallest length for which a sparse or off-heap array is used
+	 */
+	static final int MIN_SPARSE_LENGTH = 1024, MIN_OFF_HEAP_LENGTH = 1 << 24;
+
+	/**
+	 * An array is sparse if at most 1 in SPARSE_RATIO items is set: a map entry
+	 * takes about 4 times the space of a dense item, and is slower to read
+	 */
+	static final int SPARSE_RATIO = 8;
+
+	/**
+	 * Number of items in each off-heap segment, a power of two
+	 */
+	private static final int SEGMENT_BITS = 28, SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+
+	/**
+	 * Items set, if sparse
+	 */
+	private IntIntMap sparse;
+
+	/**
+	 * Segments of items, if off-heap
+	 */
+	private IntBuffer[] offHeap;
+
+	/**
+	 * Length, if sparse or off-heap
+	 */
+	private int length;
 	
 	/**
 	 * Initializes with name, and sets values to null.
@@ -28,21 +75,135 @@ public class Array {
         this.name = name;
         values = null;
     }
+
+	/**
+	 * Replaces the items with length items, all 0, held in the way that suits
+	 * the length and the number of items that will be set.
+	 * 
+	 * @param length Length of array
+	 * @param entries Number of items expected to be set
+	 * @throws IllegalArgumentException If length is negative
+	 */
+	public void allocate(int length, int entries)
+	throws IllegalArgumentException {
+		if (length < 0) {
+			throw new IllegalArgumentException("negative array length " + length);
+		}
+		values = null;
+		sparse = null;
+		offHeap = null;
+		this.length = length;
+		if (length >= MIN_SPARSE_LENGTH && entries <= length / SPARSE_RATIO) {
+			sparse = new IntIntMap(entries);
+		} else if (length >= MIN_OFF_HEAP_LENGTH) {
+			offHeap = new IntBuffer[((length - 1) >>> SEGMENT_BITS) + 1];
+			for (int i = 0; i < offHeap.length; i++) {
+				int items = Math.min(SEGMENT_MASK + 1, length - (i << SEGMENT_BITS));
+				offHeap[i] = ByteBuffer.allocateDirect(items * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+			}
+		} else {
+			values = new int[length];
+		}
+	}
+
+	/**
+	 * Returns an item.
+	 * 
+	 * @param index Index of item
+	 * @return Value of item
+	 * @throws ArrayIndexOutOfBoundsException If index is out of bounds
+	 */
+	public int get(int index) {
+		int[] v = values;
+		if (v != null) {
+			return v[index];
+		}
+		return getOther(index);
+	}
+
+	/**
+	 * Returns an item of a sparse or off-heap array, kept apart from get so that
+	 * get is small enough to be inlined.
+	 */
+	private int getOther(int index) {
+		checkIndex(index);
+		if (sparse != null) {
+			return sparse.get(index);
+		}
+		return offHeap[index >>> SEGMENT_BITS].get(index & SEGMENT_MASK);
+	}
+
+	/**
+	 * Sets an item.
+	 * 
+	 * @param index Index of item
+	 * @param value New value
+	 * @throws ArrayIndexOutOfBoundsException If index is out of bounds
+	 */
+	public void set(int index, int value) {
+		if (values != null) {
+			values[index] = value;
+			return;
+		}
+		checkIndex(index);
+		if (sparse != null) {
+			sparse.put(index, value);
+		} else {
+			offHeap[index >>> SEGMENT_BITS].put(index & SEGMENT_MASK, value);
+		}
+	}
+
+	/**
+	 * Returns the length.
+	 * 
+	 * @return Length of array, 0 if it has no values
+	 */
+	public int length() {
+		if (values != null) {
+			return values.length;
+		}
+		return sparse != null || offHeap != null ? length : 0;
+	}
+
+	/**
+	 * Tells if the array is held in a hash map of the items set.
+	 * 
+	 * @return True if sparse, false if not
+	 */
+	public boolean isSparse() {
+		return values == null && sparse != null;
+	}
+
+	/**
+	 * Tells if the array is held outside the Java heap.
+	 * 
+	 * @return True if off-heap, false if not
+	 */
+	public boolean isOffHeap() {
+		return values == null && sparse == null && offHeap != null;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= length()) {
+			throw new ArrayIndexOutOfBoundsException("Index " + index + " out of bounds for length " + length());
+		}
+	}
 	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
-		if (values == null || values.length == 0) {
+		int length = length();
+		if (length == 0) {
 			return name + "=[ ]";
 		}
 		StringBuilder sb = new StringBuilder();
 		sb.append(name);
 		sb.append("=[");
-		sb.append(values[0]);
-		for (int i=1; i < values.length; i++) {
+		sb.append(get(0));
+		for (int i=1; i < length; i++) {
 			sb.append(',');
-			sb.append(values[i]);
+			sb.append(get(i));
 		}
 		sb.append(']');
 		return sb.toString();
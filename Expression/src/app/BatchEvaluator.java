@@ -0,0 +1,142 @@
+package app;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class evaluates a compiled expression over many rows of variable values
+ * held in columns (see CompiledExpression.evaluate(int[][], int[][][], float[])).
+ * The postfix code is run one block of BLOCK rows at a time on a stack of
+ * float vectors: each instruction is decoded once per block and then applied to
+ * every row of the block in a tight loop, which the JIT can unroll and vectorize.
+ * Every row gets exactly the float operations of a single evaluation.
+ *
+ * The parallel version splits the rows on the common ForkJoinPool; ranges
+ * shorter than PARALLEL_CUTOFF rows are evaluated on the current thread.
+ *
+ */
+final class BatchEvaluator {
+
+	/**
+	 * Number of rows evaluated together
+	 */
+	static final int BLOCK = 256;
+
+	/**
+	 * Number of rows below which a parallel batch is not split further
+	 */
+	static final int PARALLEL_CUTOFF = 64 * BLOCK;
+
+	// prevent instantiation
+	private BatchEvaluator() { }
+
+	/**
+	 * Evaluates rows from..to-1 into results.
+	 */
+	static void evaluate(CompiledExpression ce, int[][] columns, int[][][] arrays, float[] results,
+			int from, int to) {
+		int[] code = ce.code;
+		float[][] s = new float[Math.max(1, ce.maxDepth)][BLOCK];
+		float[][] temps = new float[ce.temps][BLOCK];
+		for (int start = from; start < to; start += BLOCK) {
+			int n = Math.min(BLOCK, to - start);
+			int sp = 0;
+			for (int k = 0; k < code.length; k++) {
+				int c = code[k];
+				int operand = c >>> CompiledExpression.OP_BITS;
+				switch (c & CompiledExpression.OP_MASK) {
+				case CompiledExpression.CONST:
+					Arrays.fill(s[sp++], 0, n, ce.constants[operand]);
+					break;
+				case CompiledExpression.VAR: {
+					int[] column = columns[operand];
+					float[] d = s[sp++];
+					for (int i = 0; i < n; i++) {
+						d[i] = (float)column[start + i];
+					}
+					break;
+				}
+				case CompiledExpression.ARRAY: {
+					int[][] values = arrays[operand];
+					float[] d = s[sp - 1];
+					for (int i = 0; i < n; i++) {
+						d[i] = (float)values[start + i][(int)d[i]];
+					}
+					break;
+				}
+				case CompiledExpression.ADD: {
+					sp--;
+					float[] x = s[sp - 1], y = s[sp];
+					for (int i = 0; i < n; i++) {
+						x[i] = x[i] + y[i];
+					}
+					break;
+				}
+				case CompiledExpression.SUB: {
+					sp--;
+					float[] x = s[sp - 1], y = s[sp];
+					for (int i = 0; i < n; i++) {
+						x[i] = x[i] - y[i];
+					}
+					break;
+				}
+				case CompiledExpression.MUL: {
+					sp--;
+					float[] x = s[sp - 1], y = s[sp];
+					for (int i = 0; i < n; i++) {
+						x[i] = x[i] * y[i];
+					}
+					break;
+				}
+				case CompiledExpression.DIV: {
+					sp--;
+					float[] x = s[sp - 1], y = s[sp];
+					for (int i = 0; i < n; i++) {
+						x[i] = x[i] / y[i];
+					}
+					break;
+				}
+				case CompiledExpression.STORE:
+					System.arraycopy(s[sp - 1], 0, temps[operand], 0, n);
+					break;
+				default: // LOAD
+					System.arraycopy(temps[operand], 0, s[sp++], 0, n);
+				}
+			}
+			System.arraycopy(s[0], 0, results, start, n);
+		}
+	}
+
+	/**
+	 * Parallel version of evaluate over all rows.
+	 */
+	static void parallelEvaluate(CompiledExpression ce, int[][] columns, int[][][] arrays, float[] results) {
+		ForkJoinPool.commonPool().invoke(new EvaluateTask(ce, columns, arrays, results, 0, results.length));
+	}
+
+	private static final class EvaluateTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final CompiledExpression ce;
+		private final int[][] columns;
+		private final int[][][] arrays;
+		private final float[] results;
+		private final int from, to;
+
+		EvaluateTask(CompiledExpression ce, int[][] columns, int[][][] arrays, float[] results, int from, int to) {
+			this.ce = ce; this.columns = columns; this.arrays = arrays; this.results = results;
+			this.from = from; this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from < PARALLEL_CUTOFF) {
+				evaluate(ce, columns, arrays, results, from, to);
+				return;
+			}
+			// split on a block boundary
+			int mid = from + (to - from) / (2 * BLOCK) * BLOCK;
+			invokeAll(new EvaluateTask(ce, columns, arrays, results, from, mid),
+					new EvaluateTask(ce, columns, arrays, results, mid, to));
+		}
+	}
+}
@@ -0,0 +1,301 @@
+package app;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+
+/**
+ * This class translates the postfix code of a compiled expression into a JVM
+ * class implementing Kernel, defined as a hidden class in this package. The
+ * evaluate method of the class is straight-line bytecode: each instruction of
+ * the postfix code becomes the few JVM instructions that do the same float
+ * operation, and temporaries become local variables. HotSpot then compiles and
+ * inlines it like any other method, with no interpreter loop or dispatch.
+ * Array items are read through Array.get, which is inlined too, so the kernel
+ * works with any array storage.
+ *
+ * Since the code has no branches, the class needs no stack map frames, and the
+ * class file is written directly.
+ *
+ * CompiledExpression.evaluate switches to a kernel after THRESHOLD evaluations,
+ * for expressions of at most MAX_CODE instructions.
+ *
+ */
+final class BytecodeCompiler {
+
+	/**
+	 * Number of evaluations after which an expression is compiled to bytecode
+	 */
+	static final int THRESHOLD = 10000;
+
+	/**
+	 * Largest number of postfix instructions compiled, so the method stays well
+	 * within the 64K bytecode limit and the size HotSpot is willing to compile
+	 */
+	static final int MAX_CODE = 4096;
+
+	/**
+	 * Fixed constant pool entries
+	 */
+	private static final int THIS_CLASS = 2, OBJECT_CLASS = 4, KERNEL_CLASS = 6,
+			INIT = 7, VOID_TYPE = 8, OBJECT_INIT = 10, EVALUATE = 11, EVALUATE_TYPE = 12,
+			CODE = 13, VALUE_FIELD = 19, GET_METHOD = 25, FIXED_ENTRIES = 25;
+
+	/**
+	 * JVM opcodes used
+	 */
+	private static final int ICONST_0 = 0x03, FCONST_0 = 0x0b, BIPUSH = 0x10, SIPUSH = 0x11,
+			LDC = 0x12, LDC_W = 0x13, FLOAD = 0x17, ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD_2 = 0x2c,
+			AALOAD = 0x32, FSTORE = 0x38, DUP = 0x59, SWAP = 0x5f,
+			FADD = 0x62, FSUB = 0x66, FMUL = 0x6a, FDIV = 0x6e, I2F = 0x86, F2I = 0x8b,
+			FRETURN = 0xae, RETURN = 0xb1, GETFIELD = 0xb4, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7,
+			WIDE = 0xc4;
+
+	// prevent instantiation
+	private BytecodeCompiler() { }
+
+	/**
+	 * Compiles an expression into a kernel.
+	 *
+	 * @param ce Compiled expression
+	 * @return Kernel, or null if the expression is too large or cannot be compiled
+	 */
+	static Kernel compile(CompiledExpression ce) {
+		if (ce.code.length > MAX_CODE) {
+			return null;
+		}
+		try {
+			Class<?> kernel = MethodHandles.lookup().defineHiddenClass(classFile(ce), true).lookupClass();
+			return (Kernel)kernel.getDeclaredConstructor().newInstance();
+		} catch (IOException | ReflectiveOperationException | LinkageError e) {
+			return null; // stay with the interpreter
+		}
+	}
+
+	/**
+	 * Writes the class file.
+	 */
+	private static byte[] classFile(CompiledExpression ce)
+	throws IOException {
+		ByteArrayOutputStream pool = new ByteArrayOutputStream();
+		DataOutputStream cp = new DataOutputStream(pool);
+		utf8(cp, "app/GeneratedKernel");                    // 1
+		ref(cp, 7, 1);                                      // 2 class
+		utf8(cp, "java/lang/Object");                       // 3
+		ref(cp, 7, 3);                                      // 4 class
+		utf8(cp, "app/Kernel");                             // 5
+		ref(cp, 7, 5);                                      // 6 class
+		utf8(cp, "<init>");                                 // 7
+		utf8(cp, "()V");                                    // 8
+		ref2(cp, 12, INIT, VOID_TYPE);                      // 9 name and type
+		ref2(cp, 10, OBJECT_CLASS, 9);                      // 10 Object.<init>
+		utf8(cp, "evaluate");                               // 11
+		utf8(cp, "([Lapp/Variable;[Lapp/Array;)F");         // 12
+		utf8(cp, "Code");                                   // 13
+		utf8(cp, "app/Variable");                           // 14
+		ref(cp, 7, 14);                                     // 15 class
+		utf8(cp, "value");                                  // 16
+		utf8(cp, "I");                                      // 17
+		ref2(cp, 12, 16, 17);                               // 18 name and type
+		ref2(cp, 9, 15, 18);                                // 19 Variable.value
+		utf8(cp, "app/Array");                              // 20
+		ref(cp, 7, 20);                                     // 21 class
+		utf8(cp, "get");                                    // 22
+		utf8(cp, "(I)I");                                   // 23
+		ref2(cp, 12, 22, 23);                               // 24 name and type
+		ref2(cp, 10, 21, 24);                               // 25 Array.get
+		int entries = FIXED_ENTRIES;
+
+		// evaluate(Variable[] variables, Array[] arrays): locals 1 and 2 are the
+		// parameters, and temporary t is local 3 + t
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(body);
+		HashMap<Integer, Integer> floats = new HashMap<Integer, Integer>();
+		HashMap<Integer, Integer> ints = new HashMap<Integer, Integer>();
+		for (int c : ce.code) {
+			int operand = c >>> CompiledExpression.OP_BITS;
+			switch (c & CompiledExpression.OP_MASK) {
+			case CompiledExpression.CONST: {
+				float value = ce.constants[operand];
+				int bits = Float.floatToRawIntBits(value);
+				if (bits == Float.floatToRawIntBits(0f) || bits == Float.floatToRawIntBits(1f)
+						|| bits == Float.floatToRawIntBits(2f)) {
+					out.writeByte(FCONST_0 + (int)value);
+					break;
+				}
+				Integer index = floats.get(bits);
+				if (index == null) {
+					cp.writeByte(4);
+					cp.writeInt(bits);
+					index = ++entries;
+					floats.put(bits, index);
+				}
+				ldc(out, index);
+				break;
+			}
+			case CompiledExpression.VAR:
+				out.writeByte(ALOAD_1);
+				entries = pushInt(out, cp, ints, entries, operand);
+				out.writeByte(AALOAD);
+				out.writeByte(GETFIELD);
+				out.writeShort(VALUE_FIELD);
+				out.writeByte(I2F);
+				break;
+			case CompiledExpression.ARRAY:
+				out.writeByte(F2I);
+				out.writeByte(ALOAD_2);
+				entries = pushInt(out, cp, ints, entries, operand);
+				out.writeByte(AALOAD);
+				out.writeByte(SWAP);
+				out.writeByte(INVOKEVIRTUAL);
+				out.writeShort(GET_METHOD);
+				out.writeByte(I2F);
+				break;
+			case CompiledExpression.ADD:
+				out.writeByte(FADD);
+				break;
+			case CompiledExpression.SUB:
+				out.writeByte(FSUB);
+				break;
+			case CompiledExpression.MUL:
+				out.writeByte(FMUL);
+				break;
+			case CompiledExpression.DIV:
+				out.writeByte(FDIV);
+				break;
+			case CompiledExpression.STORE:
+				out.writeByte(DUP);
+				local(out, FSTORE, 3 + operand);
+				break;
+			default: // LOAD
+				local(out, FLOAD, 3 + operand);
+			}
+		}
+		out.writeByte(FRETURN);
+		if (body.size() > 65535 || entries >= 65535) {
+			throw new IOException("expression too large");
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream cf = new DataOutputStream(bytes);
+		cf.writeInt(0xCAFEBABE);
+		cf.writeShort(0);
+		cf.writeShort(61);                  // Java 17
+		cf.writeShort(entries + 1);
+		cf.write(pool.toByteArray());
+		cf.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+		cf.writeShort(THIS_CLASS);
+		cf.writeShort(OBJECT_CLASS);
+		cf.writeShort(1);                   // interfaces
+		cf.writeShort(KERNEL_CLASS);
+		cf.writeShort(0);                   // fields
+		cf.writeShort(2);                   // methods
+
+		// public <init>() { super(); }
+		cf.writeShort(0x0001);
+		cf.writeShort(INIT);
+		cf.writeShort(VOID_TYPE);
+		cf.writeShort(1);
+		cf.writeShort(CODE);
+		cf.writeInt(12 + 5);
+		cf.writeShort(1);                   // max stack
+		cf.writeShort(1);                   // max locals
+		cf.writeInt(5);
+		cf.writeByte(ALOAD_0);
+		cf.writeByte(INVOKESPECIAL);
+		cf.writeShort(OBJECT_INIT);
+		cf.writeByte(RETURN);
+		cf.writeShort(0);                   // exception table
+		cf.writeShort(0);                   // attributes
+
+		// public float evaluate(Variable[], Array[])
+		cf.writeShort(0x0001);
+		cf.writeShort(EVALUATE);
+		cf.writeShort(EVALUATE_TYPE);
+		cf.writeShort(1);
+		cf.writeShort(CODE);
+		cf.writeInt(12 + body.size());
+		cf.writeShort(ce.maxDepth + 3);     // the array, slot and index of an array read
+		cf.writeShort(3 + ce.temps);
+		cf.writeInt(body.size());
+		cf.write(body.toByteArray());
+		cf.writeShort(0);
+		cf.writeShort(0);
+
+		cf.writeShort(0);                   // class attributes
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Writes the instructions that push an int, adding a constant pool entry if needed.
+	 *
+	 * @return Number of constant pool entries
+	 */
+	private static int pushInt(DataOutputStream out, DataOutputStream cp, HashMap<Integer, Integer> ints,
+			int entries, int value)
+	throws IOException {
+		if (value <= 5) {
+			out.writeByte(ICONST_0 + value);
+		} else if (value <= Byte.MAX_VALUE) {
+			out.writeByte(BIPUSH);
+			out.writeByte(value);
+		} else if (value <= Short.MAX_VALUE) {
+			out.writeByte(SIPUSH);
+			out.writeShort(value);
+		} else {
+			Integer index = ints.get(value);
+			if (index == null) {
+				cp.writeByte(3);
+				cp.writeInt(value);
+				index = ++entries;
+				ints.put(value, index);
+			}
+			ldc(out, index);
+		}
+		return entries;
+	}
+
+	private static void ldc(DataOutputStream out, int index)
+	throws IOException {
+		if (index <= 255) {
+			out.writeByte(LDC);
+			out.writeByte(index);
+		} else {
+			out.writeByte(LDC_W);
+			out.writeShort(index);
+		}
+	}
+
+	private static void local(DataOutputStream out, int opcode, int index)
+	throws IOException {
+		if (index <= 255) {
+			out.writeByte(opcode);
+			out.writeByte(index);
+		} else {
+			out.writeByte(WIDE);
+			out.writeByte(opcode);
+			out.writeShort(index);
+		}
+	}
+
+	private static void utf8(DataOutputStream cp, String s)
+	throws IOException {
+		cp.writeByte(1);
+		cp.writeUTF(s);
+	}
+
+	private static void ref(DataOutputStream cp, int tag, int index)
+	throws IOException {
+		cp.writeByte(tag);
+		cp.writeShort(index);
+	}
+
+	private static void ref2(DataOutputStream cp, int tag, int first, int second)
+	throws IOException {
+		cp.writeByte(tag);
+		cp.writeShort(first);
+		cp.writeShort(second);
+	}
+}
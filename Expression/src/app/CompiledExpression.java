@@ -0,0 +1,811 @@
+package app;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * This class holds an expression compiled by Expression.compile. The expression
+ * is parsed once into postfix code for a small stack machine, and every simple
+ * variable and array is given a slot. bind connects the slots to Variable and
+ * Array instances, after which evaluate runs the code against their current
+ * values without parsing, searching or allocating. The values may be changed
+ * (for instance with Expression.loadVariableValues) between evaluations.
+ *
+ * Results are the same as those of Expression.evaluate on the same expression.
+ *
+ * The batch version of evaluate takes the values of each variable, over many
+ * rows, as a column, and evaluates all rows in one pass (see BatchEvaluator).
+ *
+ * evaluateDouble, evaluateLong and evaluateExact evaluate the same code in
+ * double, long and exact rational arithmetic (see NumericMode), each with its own
+ * loop over its own primitive stack.
+ *
+ * A compiled expression is not thread safe, since evaluate works on a stack
+ * owned by the instance. Batch evaluations and parallelEvaluate do not use that
+ * stack, and may run at the same time as each other.
+ *
+ */
+public class CompiledExpression {
+
+	/**
+	 * Opcodes. Each instruction is an opcode in the low 8 bits and an operand
+	 * (constant index or slot) in the rest.
+	 */
+	static final int CONST = 0, VAR = 1, ARRAY = 2, ADD = 3, SUB = 4, MUL = 5, DIV = 6;
+
+	/**
+	 * Opcodes for shared subexpressions: STORE copies the top of the stack to a
+	 * temporary, and LOAD pushes a temporary
+	 */
+	static final int STORE = 7, LOAD = 8;
+
+	/**
+	 * Bits taken by the opcode in an instruction
+	 */
+	static final int OP_BITS = 8, OP_MASK = (1 << OP_BITS) - 1;
+
+	/**
+	 * The expression, as given to compile
+	 */
+	final String expr;
+
+	/**
+	 * Root of the parse tree
+	 */
+	final Node root;
+
+	/**
+	 * Postfix code
+	 */
+	final int[] code;
+
+	/**
+	 * Values of the constants, by index
+	 */
+	final float[] constants;
+
+	/**
+	 * Text of the constants as written in the expression, by index, null for
+	 * constants computed by Optimizer
+	 */
+	final String[] constantTexts;
+
+	/**
+	 * True if some constant was computed by Optimizer, in float arithmetic
+	 */
+	private final boolean folded;
+
+	/**
+	 * Names of the simple variables and arrays, by slot
+	 */
+	final String[] variableNames, arrayNames;
+
+	/**
+	 * Slots of the names
+	 */
+	final SymbolTable symbols;
+
+	/**
+	 * Largest number of values on the stack during evaluation
+	 */
+	final int maxDepth;
+
+	/**
+	 * Number of temporaries used by STORE and LOAD
+	 */
+	final int temps;
+
+	/**
+	 * Number of nodes removed by Optimizer, 0 if not optimized
+	 */
+	int removedNodes;
+
+	/**
+	 * Variables and arrays bound to the slots
+	 */
+	final Variable[] variables;
+	final Array[] arrays;
+	private boolean bound;
+
+	/**
+	 * Number of calls to evaluate, until the expression is compiled to bytecode,
+	 * and the bytecode, or null if it is not compiled (yet)
+	 */
+	private int evaluations;
+	private Kernel kernel;
+
+	/**
+	 * Plan for parallelEvaluate, built when first needed
+	 */
+	private volatile ParallelEvaluator parallel;
+
+	/**
+	 * Operand stack, as deep as the code needs
+	 */
+	private final float[] stack;
+
+	/**
+	 * Values of the temporaries during evaluate
+	 */
+	private final float[] tempValues;
+
+	/**
+	 * Constants, operand stacks and temporaries of the other numeric modes, built
+	 * when each mode is first used
+	 */
+	private double[] doubleConstants, doubleStack, doubleTemps;
+	private long[] longConstants, longStack, longTemps;
+	private Rational[] exactConstants, exactStack, exactTemps;
+
+	/**
+	 * The expression as written, compiled and bound like this one, which the other
+	 * numeric modes evaluate if this one has folded constants
+	 */
+	private CompiledExpression unfolded;
+
+	/**
+	 * Compiles a parse tree. Subexpressions may be shared, as in trees built by
+	 * Optimizer: a shared subexpression other than a constant or simple variable
+	 * is evaluated where it first occurs, kept in a temporary with STORE, and
+	 * read back with LOAD where it occurs again.
+	 *
+	 * @param expr The expression
+	 * @param root Root of its parse tree
+	 */
+	CompiledExpression(String expr, Node root) {
+		this.expr = expr;
+		this.root = root;
+		removedNodes = 0;
+		symbols = new SymbolTable();
+		ArrayList<String> varNames = new ArrayList<String>();
+		ArrayList<String> arrNames = new ArrayList<String>();
+		IdentityHashMap<Node, Integer> refs = references(root);
+		IdentityHashMap<Node, Integer> tempOf = new IdentityHashMap<Node, Integer>();
+		int[] out = new int[16];
+		float[] pool = new float[16];
+		String[] texts = new String[16];
+		int length = 0, constantCount = 0, tempCount = 0;
+
+		// walk the tree in postfix order with an explicit stack, since long chains
+		// of operations make it very deep; a null above a node marks that its
+		// operands are done and it is to be emitted
+		ArrayList<Node> pending = new ArrayList<Node>();
+		pending.add(root);
+		while (!pending.isEmpty()) {
+			Node node = pending.remove(pending.size() - 1);
+			if (length + 2 > out.length) {
+				out = Arrays.copyOf(out, out.length * 2);
+			}
+			if (node != null) {
+				Integer temp = tempOf.get(node);
+				if (temp != null) {
+					out[length++] = LOAD | temp << OP_BITS;
+					continue;
+				}
+				pending.add(node);
+				pending.add(null);
+				if (node.right != null) {
+					pending.add(node.right);
+				}
+				if (node.left != null) {
+					pending.add(node.left);
+				}
+				continue;
+			}
+			node = pending.remove(pending.size() - 1);
+			int operand = 0;
+			switch (node.op) {
+			case CONST:
+				if (constantCount == pool.length) {
+					pool = Arrays.copyOf(pool, pool.length * 2);
+					texts = Arrays.copyOf(texts, texts.length * 2);
+				}
+				pool[constantCount] = node.constant;
+				texts[constantCount] = node.text;
+				operand = constantCount++;
+				break;
+			case VAR:
+				operand = slot(symbols.addVariable(node.name), varNames, node.name);
+				break;
+			case ARRAY:
+				operand = slot(symbols.addArray(node.name), arrNames, node.name);
+				break;
+			}
+			out[length++] = node.op | operand << OP_BITS;
+			if (node.op >= ARRAY && refs.get(node) > 1) {
+				tempOf.put(node, tempCount);
+				out[length++] = STORE | tempCount++ << OP_BITS;
+			}
+		}
+		code = Arrays.copyOf(out, length);
+		constants = Arrays.copyOf(pool, constantCount);
+		constantTexts = Arrays.copyOf(texts, constantCount);
+		boolean folded = false;
+		for (String text : constantTexts) {
+			folded |= text == null;
+		}
+		this.folded = folded;
+		int depth = 0, maxDepth = 0;
+		for (int c : code) {
+			int op = c & OP_MASK;
+			if (op == CONST || op == VAR || op == LOAD) {
+				depth++;
+			} else if (op >= ADD && op <= DIV) {
+				depth--;
+			}
+			maxDepth = Math.max(maxDepth, depth);
+		}
+		temps = tempCount;
+		tempValues = new float[tempCount];
+		variableNames = varNames.toArray(new String[0]);
+		arrayNames = arrNames.toArray(new String[0]);
+		variables = new Variable[variableNames.length];
+		arrays = new Array[arrayNames.length];
+		bound = variableNames.length == 0 && arrayNames.length == 0;
+		this.maxDepth = maxDepth;
+		stack = new float[maxDepth];
+	}
+
+	/**
+	 * Counts the references to each node of a tree from its parents, and 1 for the root.
+	 */
+	private static IdentityHashMap<Node, Integer> references(Node root) {
+		IdentityHashMap<Node, Integer> refs = new IdentityHashMap<Node, Integer>();
+		ArrayList<Node> pending = new ArrayList<Node>();
+		pending.add(root);
+		while (!pending.isEmpty()) {
+			Node node = pending.remove(pending.size() - 1);
+			Integer count = refs.get(node);
+			refs.put(node, count == null ? 1 : count + 1);
+			if (count == null) {
+				if (node.left != null) {
+					pending.add(node.left);
+				}
+				if (node.right != null) {
+					pending.add(node.right);
+				}
+			}
+		}
+		return refs;
+	}
+
+	/**
+	 * Lists the nodes of a tree in postfix order, a shared node once per reference.
+	 * The tree is walked with an explicit stack, since long chains of operations
+	 * make it very deep.
+	 */
+	static ArrayList<Node> postfix(Node root) {
+		// visit node, right, left, then reverse
+		ArrayList<Node> order = new ArrayList<Node>();
+		ArrayList<Node> pending = new ArrayList<Node>();
+		pending.add(root);
+		while (!pending.isEmpty()) {
+			Node node = pending.remove(pending.size() - 1);
+			order.add(node);
+			if (node.left != null) {
+				pending.add(node.left);
+			}
+			if (node.right != null) {
+				pending.add(node.right);
+			}
+		}
+		for (int i = 0, j = order.size() - 1; i < j; i++, j--) {
+			Node t = order.get(i);
+			order.set(i, order.get(j));
+			order.set(j, t);
+		}
+		return order;
+	}
+
+	/**
+	 * Records the name of a slot handed out by a SymbolTable, if it is new.
+	 */
+	private static int slot(int slot, ArrayList<String> names, String name) {
+		if (slot == names.size()) {
+			names.add(name);
+		}
+		return slot;
+	}
+
+	/**
+	 * Binds the variables and arrays of the expression to the instances with the
+	 * same names. Later changes to their values are seen by evaluate.
+	 *
+	 * @param vars The variables array list, as populated by Expression.makeVariableLists
+	 * @param arrays The arrays array list, as populated by Expression.makeVariableLists
+	 * @return This compiled expression
+	 * @throws IllegalArgumentException If a variable or array of the expression is not in the lists
+	 */
+	public CompiledExpression bind(ArrayList<Variable> vars, ArrayList<Array> arrays)
+	throws IllegalArgumentException {
+		SymbolTable symbols = SymbolTable.of(vars, arrays);
+		for (int i = 0; i < variableNames.length; i++) {
+			int slot = symbols.variableSlot(variableNames[i]);
+			if (slot == -1) {
+				throw new IllegalArgumentException("no variable " + variableNames[i]);
+			}
+			variables[i] = vars.get(slot);
+		}
+		for (int i = 0; i < arrayNames.length; i++) {
+			int slot = symbols.arraySlot(arrayNames[i]);
+			if (slot == -1) {
+				throw new IllegalArgumentException("no array " + arrayNames[i]);
+			}
+			this.arrays[i] = arrays.get(slot);
+		}
+		bound = true;
+		unfolded = null;
+		return this;
+	}
+
+	/**
+	 * Evaluates the expression with the current values of the bound variables and
+	 * arrays. After many evaluations, an expression of moderate size is compiled to
+	 * JVM bytecode (see BytecodeCompiler), which is then run instead of the postfix
+	 * code, with the same results.
+	 *
+	 * @return Result of evaluation
+	 * @throws IllegalStateException If the expression has not been bound
+	 */
+	public float evaluate()
+	throws IllegalStateException {
+		if (!bound) {
+			throw new IllegalStateException("expression is not bound");
+		}
+		if (kernel != null) {
+			return kernel.evaluate(variables, arrays);
+		}
+		if (++evaluations == BytecodeCompiler.THRESHOLD) {
+			kernel = BytecodeCompiler.compile(this);
+		}
+		float[] s = stack;
+		float[] t = tempValues;
+		int sp = 0;
+		for (int i = 0; i < code.length; i++) {
+			int c = code[i];
+			switch (c & OP_MASK) {
+			case CONST:
+				s[sp++] = constants[c >>> OP_BITS];
+				break;
+			case VAR:
+				s[sp++] = (float)variables[c >>> OP_BITS].value;
+				break;
+			case ARRAY:
+				s[sp - 1] = (float)arrays[c >>> OP_BITS].get((int)s[sp - 1]);
+				break;
+			case ADD:
+				sp--;
+				s[sp - 1] = s[sp - 1] + s[sp];
+				break;
+			case SUB:
+				sp--;
+				s[sp - 1] = s[sp - 1] - s[sp];
+				break;
+			case MUL:
+				sp--;
+				s[sp - 1] = s[sp - 1] * s[sp];
+				break;
+			case DIV:
+				sp--;
+				s[sp - 1] = s[sp - 1] / s[sp];
+				break;
+			case STORE:
+				t[c >>> OP_BITS] = s[sp - 1];
+				break;
+			default: // LOAD
+				s[sp++] = t[c >>> OP_BITS];
+			}
+		}
+		return s[0];
+	}
+
+	/**
+	 * Evaluates the expression in a numeric mode, with the loop specialized for that
+	 * mode: evaluate, evaluateDouble, evaluateLong or evaluateExact.
+	 *
+	 * @param mode Numeric mode
+	 * @return Result of evaluation, a Float, Double, Long or Rational
+	 * @throws IllegalStateException If the expression has not been bound
+	 * @throws ArithmeticException As the mode's evaluation method
+	 */
+	public Number evaluate(NumericMode mode)
+	throws IllegalStateException, ArithmeticException {
+		switch (mode) {
+		case FLOAT:
+			return evaluate();
+		case DOUBLE:
+			return evaluateDouble();
+		case LONG:
+			return evaluateLong();
+		default:
+			return evaluateExact();
+		}
+	}
+
+	/**
+	 * Evaluates the expression in double arithmetic. Constants are read from their
+	 * text, so they are as precise as a double allows, and array indexes are cast
+	 * from double.
+	 *
+	 * @return Result of evaluation
+	 * @throws IllegalStateException If the expression has not been bound
+	 */
+	public double evaluateDouble()
+	throws IllegalStateException {
+		if (!bound) {
+			throw new IllegalStateException("expression is not bound");
+		}
+		if (folded) {
+			return unfolded().evaluateDouble();
+		}
+		if (doubleConstants == null) {
+			doubleStack = new double[Math.max(1, maxDepth)];
+			doubleTemps = new double[temps];
+			double[] values = new double[constants.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = Double.parseDouble(constantTexts[i]);
+			}
+			doubleConstants = values;
+		}
+		double[] s = doubleStack;
+		double[] t = doubleTemps;
+		int sp = 0;
+		for (int i = 0; i < code.length; i++) {
+			int c = code[i];
+			switch (c & OP_MASK) {
+			case CONST:
+				s[sp++] = doubleConstants[c >>> OP_BITS];
+				break;
+			case VAR:
+				s[sp++] = variables[c >>> OP_BITS].value;
+				break;
+			case ARRAY:
+				s[sp - 1] = arrays[c >>> OP_BITS].get((int)s[sp - 1]);
+				break;
+			case ADD:
+				sp--;
+				s[sp - 1] = s[sp - 1] + s[sp];
+				break;
+			case SUB:
+				sp--;
+				s[sp - 1] = s[sp - 1] - s[sp];
+				break;
+			case MUL:
+				sp--;
+				s[sp - 1] = s[sp - 1] * s[sp];
+				break;
+			case DIV:
+				sp--;
+				s[sp - 1] = s[sp - 1] / s[sp];
+				break;
+			case STORE:
+				t[c >>> OP_BITS] = s[sp - 1];
+				break;
+			default: // LOAD
+				s[sp++] = t[c >>> OP_BITS];
+			}
+		}
+		return s[0];
+	}
+
+	/**
+	 * Evaluates the expression in long integer arithmetic. Division truncates
+	 * toward zero, as in Java, and array indexes outside the int range are out of
+	 * bounds.
+	 *
+	 * @return Result of evaluation
+	 * @throws IllegalStateException If the expression has not been bound
+	 * @throws ArithmeticException If a constant is not an integer that fits in a
+	 *         long, or on overflow or division by zero
+	 */
+	public long evaluateLong()
+	throws IllegalStateException, ArithmeticException {
+		if (!bound) {
+			throw new IllegalStateException("expression is not bound");
+		}
+		if (folded) {
+			return unfolded().evaluateLong();
+		}
+		if (longConstants == null) {
+			long[] values = new long[constants.length];
+			for (int i = 0; i < values.length; i++) {
+				try {
+					values[i] = new BigDecimal(constantTexts[i]).longValueExact();
+				} catch (ArithmeticException e) {
+					throw new ArithmeticException("constant " + constantTexts[i] + " is not a long integer");
+				}
+			}
+			longStack = new long[Math.max(1, maxDepth)];
+			longTemps = new long[temps];
+			longConstants = values;
+		}
+		long[] s = longStack;
+		long[] t = longTemps;
+		int sp = 0;
+		for (int i = 0; i < code.length; i++) {
+			int c = code[i];
+			switch (c & OP_MASK) {
+			case CONST:
+				s[sp++] = longConstants[c >>> OP_BITS];
+				break;
+			case VAR:
+				s[sp++] = variables[c >>> OP_BITS].value;
+				break;
+			case ARRAY: {
+				long index = s[sp - 1];
+				s[sp - 1] = arrays[c >>> OP_BITS].get(index == (int)index ? (int)index : -1);
+				break;
+			}
+			case ADD:
+				sp--;
+				s[sp - 1] = Math.addExact(s[sp - 1], s[sp]);
+				break;
+			case SUB:
+				sp--;
+				s[sp - 1] = Math.subtractExact(s[sp - 1], s[sp]);
+				break;
+			case MUL:
+				sp--;
+				s[sp - 1] = Math.multiplyExact(s[sp - 1], s[sp]);
+				break;
+			case DIV:
+				sp--;
+				if (s[sp] == -1 && s[sp - 1] == Long.MIN_VALUE) {
+					throw new ArithmeticException("long overflow");
+				}
+				s[sp - 1] = s[sp - 1] / s[sp];
+				break;
+			case STORE:
+				t[c >>> OP_BITS] = s[sp - 1];
+				break;
+			default: // LOAD
+				s[sp++] = t[c >>> OP_BITS];
+			}
+		}
+		return s[0];
+	}
+
+	/**
+	 * Evaluates the expression exactly, in rational arithmetic on big integers.
+	 * Constants are read exactly from their text, so 0.1 is 1/10, and array
+	 * indexes are truncated toward zero.
+	 *
+	 * @return Result of evaluation
+	 * @throws IllegalStateException If the expression has not been bound
+	 * @throws ArithmeticException On division by zero
+	 */
+	public Rational evaluateExact()
+	throws IllegalStateException, ArithmeticException {
+		if (!bound) {
+			throw new IllegalStateException("expression is not bound");
+		}
+		if (folded) {
+			return unfolded().evaluateExact();
+		}
+		if (exactConstants == null) {
+			exactStack = new Rational[Math.max(1, maxDepth)];
+			exactTemps = new Rational[temps];
+			Rational[] values = new Rational[constants.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = Rational.parse(constantTexts[i]);
+			}
+			exactConstants = values;
+		}
+		Rational[] s = exactStack;
+		Rational[] t = exactTemps;
+		int sp = 0;
+		for (int i = 0; i < code.length; i++) {
+			int c = code[i];
+			switch (c & OP_MASK) {
+			case CONST:
+				s[sp++] = exactConstants[c >>> OP_BITS];
+				break;
+			case VAR:
+				s[sp++] = Rational.valueOf(variables[c >>> OP_BITS].value);
+				break;
+			case ARRAY:
+				s[sp - 1] = Rational.valueOf(arrays[c >>> OP_BITS].get(s[sp - 1].intValue()));
+				break;
+			case ADD:
+				sp--;
+				s[sp - 1] = Rational.add(s[sp - 1], s[sp]);
+				break;
+			case SUB:
+				sp--;
+				s[sp - 1] = Rational.subtract(s[sp - 1], s[sp]);
+				break;
+			case MUL:
+				sp--;
+				s[sp - 1] = Rational.multiply(s[sp - 1], s[sp]);
+				break;
+			case DIV:
+				sp--;
+				s[sp - 1] = Rational.divide(s[sp - 1], s[sp]);
+				break;
+			case STORE:
+				t[c >>> OP_BITS] = s[sp - 1];
+				break;
+			default: // LOAD
+				s[sp++] = t[c >>> OP_BITS];
+			}
+		}
+		Rational result = s[0];
+		Arrays.fill(s, null);
+		Arrays.fill(t, null);
+		return result;
+	}
+
+	/**
+	 * Returns the expression as written, compiled and bound to the same variables
+	 * and arrays, for the numeric modes other than float.
+	 */
+	private CompiledExpression unfolded() {
+		CompiledExpression u = unfolded;
+		if (u == null) {
+			u = new CompiledExpression(expr, Parser.parse(expr));
+			for (int i = 0; i < u.variables.length; i++) {
+				u.variables[i] = variables[variableSlot(u.variableNames[i])];
+			}
+			for (int i = 0; i < u.arrays.length; i++) {
+				u.arrays[i] = arrays[arraySlot(u.arrayNames[i])];
+			}
+			u.bound = true;
+			unfolded = u;
+		}
+		return u;
+	}
+
+	/**
+	 * Evaluates the expression with the current values of the bound variables and
+	 * arrays, evaluating large independent subexpressions in parallel on the common
+	 * ForkJoinPool (see ParallelEvaluator). The result is the same as that of
+	 * evaluate. Worthwhile only for expressions of many thousands of terms.
+	 *
+	 * @return Result of evaluation
+	 * @throws IllegalStateException If the expression has not been bound
+	 */
+	public float parallelEvaluate()
+	throws IllegalStateException {
+		if (!bound) {
+			throw new IllegalStateException("expression is not bound");
+		}
+		ParallelEvaluator p = parallel;
+		if (p == null) {
+			p = new ParallelEvaluator(this);
+			parallel = p;
+		}
+		return p.evaluate();
+	}
+
+	/**
+	 * Returns an optimized version of this expression, in which operations on
+	 * constants are done once by the compiler and repeated subexpressions, such
+	 * as a*b in a*b+c/(a*b) or A[b+1] in A[b+1]*A[b+1], are evaluated once per
+	 * evaluation (see Optimizer). Results are the same as those of this
+	 * expression. The optimized expression is not bound.
+	 *
+	 * @return Optimized compiled expression
+	 */
+	public CompiledExpression optimize() {
+		return Optimizer.optimize(this);
+	}
+
+	/**
+	 * Returns the number of parse tree nodes that optimization removed from the
+	 * work of each evaluation: operations on constants that were folded, and nodes
+	 * of repeated subexpressions that are read back instead of evaluated again.
+	 *
+	 * @return Number of nodes removed, 0 if this expression was not optimized
+	 */
+	public int removedNodes() {
+		return removedNodes;
+	}
+
+	/**
+	 * Evaluates the expression over rows of variable values. Column i holds the
+	 * values, by row, of the simple variable in slot i (see variableSlot), and
+	 * arrays[j] holds the values, by row, of the array in slot j (see arraySlot).
+	 * Each result is the same as evaluate would give with those values.
+	 *
+	 * @param columns Values of the simple variables, by slot and then by row
+	 * @param arrays Values of the arrays, by slot and then by row
+	 * @param results Array to receive the result of each row; its length is the number of rows
+	 * @throws IllegalArgumentException If there is not a column for every slot, with a value for every row
+	 */
+	public void evaluate(int[][] columns, int[][][] arrays, float[] results)
+	throws IllegalArgumentException {
+		evaluate(columns, arrays, results, false);
+	}
+
+	/**
+	 * Evaluates the expression over rows of variable values, as evaluate(columns,
+	 * arrays, results), optionally splitting the rows across the cores.
+	 *
+	 * @param columns Values of the simple variables, by slot and then by row
+	 * @param arrays Values of the arrays, by slot and then by row
+	 * @param results Array to receive the result of each row; its length is the number of rows
+	 * @param parallel True to evaluate parts of the rows in parallel on the common ForkJoinPool
+	 * @throws IllegalArgumentException If there is not a column for every slot, with a value for every row
+	 */
+	public void evaluate(int[][] columns, int[][][] arrays, float[] results, boolean parallel)
+	throws IllegalArgumentException {
+		int rows = results.length;
+		if (columns.length < variableNames.length || arrays.length < arrayNames.length) {
+			throw new IllegalArgumentException("missing columns");
+		}
+		for (int i = 0; i < variableNames.length; i++) {
+			if (columns[i].length < rows) {
+				throw new IllegalArgumentException("column of " + variableNames[i] + " is too short");
+			}
+		}
+		for (int i = 0; i < arrayNames.length; i++) {
+			if (arrays[i].length < rows) {
+				throw new IllegalArgumentException("column of " + arrayNames[i] + " is too short");
+			}
+		}
+		if (parallel) {
+			BatchEvaluator.parallelEvaluate(this, columns, arrays, results);
+		} else {
+			BatchEvaluator.evaluate(this, columns, arrays, results, 0, rows);
+		}
+	}
+
+	/**
+	 * Returns the slot of a simple variable of the expression.
+	 *
+	 * @param name Name of variable
+	 * @return Slot, or -1 if the expression has no such variable
+	 */
+	public int variableSlot(String name) {
+		return symbols.variableSlot(name);
+	}
+
+	/**
+	 * Returns the slot of an array of the expression.
+	 *
+	 * @param name Name of array
+	 * @return Slot, or -1 if the expression has no such array
+	 */
+	public int arraySlot(String name) {
+		return symbols.arraySlot(name);
+	}
+
+	/**
+	 * Returns the number of simple variables in the expression.
+	 *
+	 * @return Number of variable slots
+	 */
+	public int variableCount() {
+		return variableNames.length;
+	}
+
+	/**
+	 * Returns the number of arrays in the expression.
+	 *
+	 * @return Number of array slots
+	 */
+	public int arrayCount() {
+		return arrayNames.length;
+	}
+
+	/**
+	 * Applies an arithmetic opcode to two values.
+	 */
+	static float apply(int op, float a, float b) {
+		switch (op) {
+		case ADD: return a + b;
+		case SUB: return a - b;
+		case MUL: return a * b;
+		default: return a / b;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return expr;
+	}
+}
@@ -2,9 +2,9 @@ package app;
 
 import java.io.*;
 import java.util.*;
-import java.util.regex.*;
 
-import structures.Stack;
+import structures.ByteStack;
+import structures.FloatStack;
 
 public class Expression {
 
@@ -23,39 +23,42 @@ public class Expression {
      */
     public static void 
     makeVariableLists(String expr, ArrayList<Variable> vars, ArrayList<Array> arrays) {
-    	StringTokenizer tokenize = new StringTokenizer(expr,delims);
-    	while(tokenize.hasMoreTokens()) {
-    		String temp = tokenize.nextToken();
-    		if(temp.matches("^[a-zA-Z]*$")) {
-	    		if(expr.indexOf(temp)+temp.length() < expr.length() && expr.charAt(expr.indexOf(temp)+temp.length()) == '[') {
-	    			boolean check = true;
-	    			for(int i = 0; i < arrays.size(); i++) {
-	    				if(arrays.get(i).name.equals(temp)) {
-	    					check = false;
-	    				}
-	    			}
-	    			if(check) {
-	    				Array add = new Array(temp);
-	    				arrays.add(add);
-	    			}
-	    		} else {
-	    			boolean check = true;
-	    			for(int i = 0; i < vars.size(); i++) {
-	    				if(vars.get(i).name.equals(temp)) {
-	    					check = false;
-	    				}
-	    			}
-	    			if(check) {
-	    				Variable add = new Variable(temp);
-	    				vars.add(add);
-	    			}
-	    		}
+    	// a table of its own, since only this method changes the lists while it runs
+    	SymbolTable symbols = new SymbolTable(vars, arrays);
+    	int i = 0;
+    	while (i < expr.length()) {
+    		if (delims.indexOf(expr.charAt(i)) != -1) {
+    			i++;
+    			continue;
+    		}
+    		int start = i;
+    		boolean name = true;
+    		while (i < expr.length() && delims.indexOf(expr.charAt(i)) == -1) {
+    			name &= isLetter(expr.charAt(i));
+    			i++;
+    		}
+    		if (!name) {
+    			continue;
+    		}
+    		if (i < expr.length() && expr.charAt(i) == '[') {
+    			if (symbols.arraySlot(expr, start, i) == -1) {
+    				Array add = new Array(expr.substring(start, i));
+    				symbols.addArray(add.name);
+    				arrays.add(add);
+    			}
+    		} else {
+    			if (symbols.variableSlot(expr, start, i) == -1) {
+    				Variable add = new Variable(expr.substring(start, i));
+    				symbols.addVariable(add.name);
+    				vars.add(add);
+    			}
     		}
     	}
     }
     
     /**
-     * Loads values for variables and arrays in the expression
+     * Loads values for variables and arrays in the expression. Results that read a
+     * loaded symbol are dropped from every ExpressionCache.
      * 
      * @param sc Scanner for values input
      * @throws IOException If there is a problem with the input 
@@ -65,144 +68,285 @@ public class Expression {
     public static void 
     loadVariableValues(Scanner sc, ArrayList<Variable> vars, ArrayList<Array> arrays) 
     throws IOException {
+    	SymbolTable symbols = SymbolTable.of(vars, arrays);
+    	ArrayList<String> loaded = ExpressionCache.isActive() ? new ArrayList<String>() : null;
         while (sc.hasNextLine()) {
             StringTokenizer st = new StringTokenizer(sc.nextLine().trim());
             int numTokens = st.countTokens();
             String tok = st.nextToken();
-            Variable var = new Variable(tok);
-            Array arr = new Array(tok);
-            int vari = vars.indexOf(var);
-            int arri = arrays.indexOf(arr);
+            int vari = symbols.variableSlot(tok);
+            int arri = symbols.arraySlot(tok);
             if (vari == -1 && arri == -1) {
             	continue;
             }
+            if (loaded != null) {
+            	loaded.add(tok);
+            }
             int num = Integer.parseInt(st.nextToken());
             if (numTokens == 2) { // scalar symbol
                 vars.get(vari).value = num;
             } else { // array symbol
-            	arr = arrays.get(arri);
-            	arr.values = new int[num];
+            	Array arr = arrays.get(arri);
+            	arr.allocate(num, numTokens - 2);
                 // following are (index,val) pairs
                 while (st.hasMoreTokens()) {
                     tok = st.nextToken();
                     StringTokenizer stt = new StringTokenizer(tok," (,)");
                     int index = Integer.parseInt(stt.nextToken());
                     int val = Integer.parseInt(stt.nextToken());
-                    arr.values[index] = val;              
+                    arr.set(index, val);
                 }
             }
         }
+        if (loaded != null && !loaded.isEmpty()) {
+        	ExpressionCache.invalidateAll(loaded);
+        }
+    }
+    
+    /**
+     * Loads values for variables and arrays in the expression from a file, in the
+     * same format as the Scanner version, with lines of any length. The file is
+     * read in chunks and parsed directly from its bytes, which is much faster for
+     * large files. Results that read a loaded symbol are dropped from every
+     * ExpressionCache.
+     * 
+     * @param file Values file
+     * @param vars The variables array list, previously populated by makeVariableLists
+     * @param arrays The arrays array list - previously populated by makeVariableLists
+     * @throws IOException If the file cannot be read or is incorrectly formatted
+     */
+    public static void 
+    loadVariableValues(java.nio.file.Path file, ArrayList<Variable> vars, ArrayList<Array> arrays) 
+    throws IOException {
+    	ArrayList<String> loaded = ValueLoader.load(file, vars, arrays, ExpressionCache.isActive());
+        if (loaded != null && !loaded.isEmpty()) {
+        	ExpressionCache.invalidateAll(loaded);
+        }
+    }
+    
+    /**
+     * Evaluates the expression in a numeric mode (see NumericMode). Float mode is
+     * evaluate; the other modes compile the expression first, so to evaluate an
+     * expression many times, compile it once and use CompiledExpression instead.
+     * 
+     * @param expr The expression
+     * @param vars The variables array list, with values for all variables in the expression
+     * @param arrays The arrays array list, with values for all array items
+     * @param mode Numeric mode
+     * @return Result of evaluation, a Float, Double, Long or Rational
+     * @throws IllegalArgumentException If the expression is incorrectly formatted, or a
+     *         variable or array of the expression is not in the lists
+     * @throws ArithmeticException As the evaluation methods of CompiledExpression
+     */
+    public static Number
+    evaluate(String expr, ArrayList<Variable> vars, ArrayList<Array> arrays, NumericMode mode)
+    throws IllegalArgumentException, ArithmeticException {
+    	if (mode == NumericMode.FLOAT) {
+    		return evaluate(expr, vars, arrays);
+    	}
+    	return compile(expr).bind(vars, arrays).evaluate(mode);
     }
     
+    /**
+     * Compiles the expression, so it can be evaluated many times without being
+     * parsed again. Bind the result to the variable lists before evaluating it.
+     *
+     * @param expr The expression
+     * @return Compiled expression
+     * @throws IllegalArgumentException If the expression is incorrectly formatted
+     */
+    public static CompiledExpression
+    compile(String expr)
+    throws IllegalArgumentException {
+    	return new CompiledExpression(expr, Parser.parse(expr));
+    }
+
     /**
      * Evaluates the expression.
      * 
+     * The expression is scanned one character at a time with the shunting-yard
+     * algorithm. Operands go on a float stack and operators on a byte stack, both
+     * reused by every evaluation on the same thread, and array subscripts are
+     * evaluated in place as regions of the expression, so an evaluation does not
+     * allocate unless the expression has a decimal point or an integer of more
+     * than 18 digits. Whitespace is ignored, even inside names and numbers.
+     *
      * @param vars The variables array list, with values for all variables in the expression
      * @param arrays The arrays array list, with values for all array items
      * @return Result of evaluation
      */
     public static float 
     evaluate(String expr, ArrayList<Variable> vars, ArrayList<Array> arrays) {
-    	expr = expr.replaceAll("\\s","");
-    	ArrayList<String> expression = new ArrayList<String>();
-    	Stack<Float> values = new Stack<Float>();
-    	Stack<String> operators = new Stack<String>();
-    	
-    	int temp = 0;
-    	int count = 0;
-    	for(int i = 0; i < expr.length(); i++) {
-    		if(expr.charAt(i) == '[') {
-    			for(int j = i; j < expr.length(); j++) {
-    				if(expr.charAt(j) == '[') {
-    					count++;
-    				}
-    				if(expr.charAt(j) == ']') {
-    					count--;
-    				}
-    				if(expr.charAt(j) == ']' && count==0) {
-    					i = j;
+    	FloatStack values = VALUES.get();
+    	ByteStack operators = OPERATORS.get();
+    	values.clear();
+    	operators.clear();
+    	return evaluate(expr, 0, expr.length(), vars, arrays, SymbolTable.of(vars, arrays), values, operators);
+    }
+    
+    /**
+     * Operator codes on the operator stack
+     */
+    private static final byte PLUS = 0, MINUS = 1, TIMES = 2, DIVIDE = 3, OPEN = 4;
+    
+    /**
+     * Evaluation stacks of each thread
+     */
+    private static final ThreadLocal<FloatStack> VALUES = ThreadLocal.withInitial(FloatStack::new);
+    private static final ThreadLocal<ByteStack> OPERATORS = ThreadLocal.withInitial(ByteStack::new);
+    
+    /**
+     * Evaluates the region from..to-1 of the expression, above whatever is already
+     * on the stacks, and leaves the stacks as it found them.
+     */
+    private static float 
+    evaluate(String expr, int from, int to, ArrayList<Variable> vars, ArrayList<Array> arrays, 
+    		SymbolTable symbols, FloatStack values, ByteStack operators) {
+    	int valueBase = values.size();
+    	int operatorBase = operators.size();
+    	int i = from;
+    	while (i < to) {
+    		char c = expr.charAt(i);
+    		if (isSpace(c)) {
+    			i++;
+    		} else if ((c >= '0' && c <= '9') || c == '.') {
+    			int end = i;
+    			long n = 0;
+    			int digits = 0;
+    			boolean simple = true;
+    			for (; end < to; end++) {
+    				char d = expr.charAt(end);
+    				if (d >= '0' && d <= '9') {
+    					n = n * 10 + (d - '0');
+    					simple &= ++digits <= 18;
+    				} else if (d == '.') {
+    					simple = false;
+    				} else if (!isSpace(d)) {
     					break;
     				}
     			}
-    		}
-    		if(expr.charAt(i) == '+' || expr.charAt(i) == '-' || expr.charAt(i) == '*' || expr.charAt(i) == '/' || expr.charAt(i) == '(' || expr.charAt(i) == ')') {
-    			if(temp == i) {
-    				expression.add(expr.substring(i,i+1));
-    				temp = i+1;
-    			} else {
-	    			expression.add(expr.substring(temp,i));
-	    			expression.add(expr.substring(i,i+1));
-	    			temp = i+1;
+    			values.push(simple ? (float)n : parseNumber(expr, i, end));
+    			i = end;
+    		} else if (isLetter(c)) {
+    			int end = i;
+    			while (end < to && (isLetter(expr.charAt(end)) || isSpace(expr.charAt(end)))) {
+    				end++;
     			}
-    		}       		
-    	}
-    	if(temp!=expr.length()) {
-    		expression.add(expr.substring(temp));
-    	}
-    	
-    	for(int i = 0; i < expression.size(); i++) {
-    		if(expression.get(i).matches("^[0-9]*$") || expression.get(i).matches("^\\d*\\.\\d+|\\d+\\.\\d*$")) {
-    			values.push(Float.parseFloat(expression.get(i)));
-    		} else if(expression.get(i).matches("^[a-zA-Z]*$")) {
-    				//Variable
-
-    				for(int j = 0; j< vars.size(); j++) {
-    					if(vars.get(j).name.equals(expression.get(i))) {
-    						values.push((float)vars.get(j).value);
-    	
-    					}
+    			if (end < to && expr.charAt(end) == '[') {
+    				int close = matchingBracket(expr, end, to);
+    				int index = (int)evaluate(expr, end + 1, close, vars, arrays, symbols, values, operators);
+    				int slot = symbols.arraySlot(expr, i, end);
+    				if (slot != -1) {
+    					values.push((float)arrays.get(slot).get(index));
     				}
-    		} else if(expression.get(i).indexOf('[') != -1){
-    				//Array
-    				String arrayName = expression.get(i).substring(0,expression.get(i).indexOf("["));
-    				int finalIndex = 0;
-    	    		for(int j = 0; j < expression.get(i).length(); j++) {
-    	    			if(expression.get(i).charAt(j) == '[') {
-    	    				count++;
-    	    			}
-    	    			if(expression.get(i).charAt(j) == ']') {
-    	    				count--;
-    	    			}
-    	   				if(expression.get(i).charAt(j) == ']' && count==0) {
-    	   					finalIndex = j;
-    	   					break;
-    	   				}
-        			}
-    				String arrayIndex = expression.get(i).substring(expression.get(i).indexOf("[")+1,finalIndex);
-    				for(int j = 0; j < arrays.size(); j++) {
-    					if(arrays.get(j).name.equals(arrayName)) {
-    						values.push((float)arrays.get(j).values[(int)evaluate(arrayIndex,vars,arrays)]);
-    					}
+    				i = close + 1;
+    			} else {
+    				int slot = symbols.variableSlot(expr, i, end);
+    				if (slot != -1) {
+    					values.push((float)vars.get(slot).value);
     				}
-    		} else if(expression.get(i).equals("(")) {
-    			operators.push(expression.get(i));
-    		} else if(expression.get(i).equals(")")) {
-    			while(!operators.peek().equals("(")) {
-    				values.push(performOperation(operators.pop(),values.pop(),values.pop()));
+    				i = end;
+    			}
+    		} else if (c == '(') {
+    			operators.push(OPEN);
+    			i++;
+    		} else if (c == ')') {
+    			while (operators.size() > operatorBase && operators.peek() != OPEN) {
+    				reduce(operators.pop(), expr, values, valueBase);
+    			}
+    			if (operators.size() == operatorBase) {
+    				throw new IllegalArgumentException("unbalanced ) in expression " + expr);
     			}
     			operators.pop();
-    		} else if(expression.get(i).equals("+") || expression.get(i).equals("-") || expression.get(i).equals("*") || expression.get(i).equals("/")) {
-    			while(!operators.isEmpty() && pemdas(expression.get(i), operators.peek())) {
-    				values.push(performOperation(operators.pop(),values.pop(),values.pop()));
+    			i++;
+    		} else if (c == '+' || c == '-' || c == '*' || c == '/') {
+    			byte op = c == '+' ? PLUS : c == '-' ? MINUS : c == '*' ? TIMES : DIVIDE;
+    			while (operators.size() > operatorBase && pemdas(op, operators.peek())) {
+    				reduce(operators.pop(), expr, values, valueBase);
     			}
-    			operators.push(expression.get(i));
+    			operators.push(op);
+    			i++;
+    		} else {
+    			throw new IllegalArgumentException("unexpected '" + c + "' in expression " + expr);
+    		}
+    	}
+    	while (operators.size() > operatorBase) {
+    		byte op = operators.pop();
+    		if (op == OPEN) {
+    			throw new IllegalArgumentException("unbalanced ( in expression " + expr);
+    		}
+    		reduce(op, expr, values, valueBase);
+    	}
+    	if (values.size() == valueBase) {
+    		throw new IllegalArgumentException("no value in expression " + expr);
+    	}
+    	if (values.size() > valueBase + 1) {
+    		throw new IllegalArgumentException("missing operator in expression " + expr);
+    	}
+    	float result = values.pop();
+    	values.truncate(valueBase);
+    	return result;
+    }
+    
+    /**
+     * Replaces the top two values with the result of an operator. Both values must
+     * be above valueBase, so a malformed region never takes the operands of the
+     * region it is nested in.
+     */
+    private static void reduce(byte op, String expr, FloatStack values, int valueBase) {
+    	if (values.size() - valueBase < 2) {
+    		throw new IllegalArgumentException("missing operand in expression " + expr);
+    	}
+    	values.push(performOperation(op, values.pop(), values.pop()));
+    }
+    
+    /**
+     * Returns the index of the ']' that closes the '[' at index open.
+     */
+    private static int matchingBracket(String expr, int open, int to) {
+    	int depth = 0;
+    	for (int j = open; j < to; j++) {
+    		char c = expr.charAt(j);
+    		if (c == '[') {
+    			depth++;
+    		} else if (c == ']' && --depth == 0) {
+    			return j;
     		}
     	}
-    	while(!operators.isEmpty()) {
-    		values.push(performOperation(operators.pop(),values.pop(),values.pop()));
+    	throw new IllegalArgumentException("unbalanced [ in expression " + expr);
+    }
+    
+    /**
+     * Parses the number in the region from..to-1 of the expression, ignoring whitespace.
+     */
+    private static float parseNumber(String expr, int from, int to) {
+    	StringBuilder sb = new StringBuilder(to - from);
+    	for (int j = from; j < to; j++) {
+    		if (!isSpace(expr.charAt(j))) {
+    			sb.append(expr.charAt(j));
+    		}
     	}
-    	return values.pop();
+    	return Float.parseFloat(sb.toString());
     }
-    private static boolean pemdas(String a, String b) {
-    	if(b.equals("(")|| b.equals(")")) return false;
-    	else if((a.equals("*")||a.equals("/")) && (b.equals("+")|| b.equals("-"))) return false;
+    
+    static boolean isSpace(char c) {
+    	return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+    }
+    
+    private static boolean isLetter(char c) {
+    	return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+    
+    private static boolean pemdas(byte a, byte b) {
+    	if(b == OPEN) return false;
+    	else if((a == TIMES || a == DIVIDE) && (b == PLUS || b == MINUS)) return false;
     	else return true;
     }
-    private static float performOperation(String operator, float a, float b) {
-    	if(operator.equals("+")) return b+a;
-    	else if(operator.equals("-")) return b-a;
-    	else if(operator.equals("*")) return b*a;
-    	else if(operator.equals("/")) return b/a;
+    private static float performOperation(byte operator, float a, float b) {
+    	if(operator == PLUS) return b+a;
+    	else if(operator == MINUS) return b-a;
+    	else if(operator == TIMES) return b*a;
+    	else if(operator == DIVIDE) return b/a;
     	else return 0;
     }
 }
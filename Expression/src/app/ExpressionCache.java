@@ -0,0 +1,359 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * This class memoizes the results of Expression.evaluate, with least recently
+ * used eviction once it holds its capacity of results.
+ *
+ * A result is keyed by the expression, with whitespace removed, and the values
+ * of the simple variables it reads. The array items an evaluation reads depend
+ * on those values, so they are recorded with the result as (array, index,
+ * value) triples and checked on every hit: a result is only returned if every
+ * item it read still has the same value, in which case evaluation would read
+ * the same items and compute the same result. Changing an array item in place
+ * is therefore safe.
+ *
+ * Expression.loadVariableValues drops the results that read a symbol it loads.
+ * Compiled expressions are cached alongside, with the same capacity.
+ *
+ * A cache is thread safe.
+ *
+ */
+public class ExpressionCache {
+
+	/**
+	 * Key of a result: expression and values of its simple variables, by slot
+	 */
+	private static final class Key {
+		final String expr;
+		final int[] values;
+		final int hash;
+
+		Key(String expr, int[] values) {
+			this.expr = expr;
+			this.values = values;
+			hash = 31 * expr.hashCode() + Arrays.hashCode(values);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key)o;
+			return hash == k.hash && expr.equals(k.expr) && Arrays.equals(values, k.values);
+		}
+	}
+
+	/**
+	 * A result, with the compiled expression that computed it and the array items it read
+	 */
+	private static final class Entry {
+		final float result;
+		final CompiledExpression ce;
+		final int[] readSlots, readIndexes, readValues;
+
+		Entry(float result, CompiledExpression ce, int[] readSlots, int[] readIndexes, int[] readValues) {
+			this.result = result;
+			this.ce = ce;
+			this.readSlots = readSlots;
+			this.readIndexes = readIndexes;
+			this.readValues = readValues;
+		}
+
+		/**
+		 * Tells if every array item read still has the value read.
+		 */
+		boolean isValid(Array[] arrays) {
+			for (int i = 0; i < readSlots.length; i++) {
+				Array arr = arrays[readSlots[i]];
+				int index = readIndexes[i];
+				if (index >= arr.length() || arr.get(index) != readValues[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Caches to notify when symbols are loaded
+	 */
+	private static final Set<ExpressionCache> CACHES =
+			Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<ExpressionCache, Boolean>()));
+
+	private final int capacity;
+
+	/**
+	 * Results and compiled expressions, in access order
+	 */
+	private final LinkedHashMap<Key, Entry> results;
+	private final LinkedHashMap<String, CompiledExpression> compiled;
+
+	private long hits, misses, evictions;
+
+	/**
+	 * Initializes an empty cache.
+	 *
+	 * @param capacity Largest number of results kept
+	 * @throws IllegalArgumentException If capacity is not positive
+	 */
+	public ExpressionCache(int capacity)
+	throws IllegalArgumentException {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.capacity = capacity;
+		results = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				if (size() > ExpressionCache.this.capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+		compiled = new LinkedHashMap<String, CompiledExpression>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<String, CompiledExpression> eldest) {
+				return size() > ExpressionCache.this.capacity;
+			}
+		};
+		CACHES.add(this);
+	}
+
+	/**
+	 * Evaluates the expression, as Expression.evaluate, returning a cached result if
+	 * the expression has been evaluated with the same values before.
+	 *
+	 * @param expr The expression
+	 * @param vars The variables array list, with values for all variables in the expression
+	 * @param arrays The arrays array list, with values for all array items
+	 * @return Result of evaluation
+	 * @throws IllegalArgumentException If the expression is incorrectly formatted, or a
+	 *         variable or array of the expression is not in the lists
+	 */
+	public synchronized float evaluate(String expr, ArrayList<Variable> vars, ArrayList<Array> arrays)
+	throws IllegalArgumentException {
+		String normalized = normalize(expr);
+		CompiledExpression ce = compiled.get(normalized);
+		if (ce == null) {
+			ce = Expression.compile(normalized);
+			compiled.put(normalized, ce);
+		}
+		SymbolTable symbols = SymbolTable.of(vars, arrays);
+		Variable[] boundVars = new Variable[ce.variableNames.length];
+		int[] values = new int[boundVars.length];
+		for (int i = 0; i < boundVars.length; i++) {
+			int slot = symbols.variableSlot(ce.variableNames[i]);
+			if (slot == -1) {
+				throw new IllegalArgumentException("no variable " + ce.variableNames[i]);
+			}
+			boundVars[i] = vars.get(slot);
+			values[i] = boundVars[i].value;
+		}
+		Array[] boundArrays = new Array[ce.arrayNames.length];
+		for (int i = 0; i < boundArrays.length; i++) {
+			int slot = symbols.arraySlot(ce.arrayNames[i]);
+			if (slot == -1) {
+				throw new IllegalArgumentException("no array " + ce.arrayNames[i]);
+			}
+			boundArrays[i] = arrays.get(slot);
+		}
+		Key key = new Key(normalized, values);
+		Entry entry = results.get(key);
+		if (entry != null && entry.isValid(boundArrays)) {
+			hits++;
+			return entry.result;
+		}
+		misses++;
+		entry = trace(ce, boundVars, boundArrays);
+		results.put(key, entry);
+		return entry.result;
+	}
+
+	/**
+	 * Evaluates compiled code, recording every array item read.
+	 */
+	private static Entry trace(CompiledExpression ce, Variable[] vars, Array[] arrays) {
+		float[] s = new float[Math.max(1, ce.maxDepth)];
+		float[] t = new float[ce.temps];
+		int[] slots = new int[4], indexes = new int[4], values = new int[4];
+		int reads = 0;
+		int sp = 0;
+		for (int c : ce.code) {
+			int operand = c >>> CompiledExpression.OP_BITS;
+			switch (c & CompiledExpression.OP_MASK) {
+			case CompiledExpression.CONST:
+				s[sp++] = ce.constants[operand];
+				break;
+			case CompiledExpression.VAR:
+				s[sp++] = (float)vars[operand].value;
+				break;
+			case CompiledExpression.ARRAY: {
+				int index = (int)s[sp - 1];
+				int value = arrays[operand].get(index);
+				if (reads == slots.length) {
+					slots = Arrays.copyOf(slots, reads * 2);
+					indexes = Arrays.copyOf(indexes, reads * 2);
+					values = Arrays.copyOf(values, reads * 2);
+				}
+				slots[reads] = operand;
+				indexes[reads] = index;
+				values[reads++] = value;
+				s[sp - 1] = (float)value;
+				break;
+			}
+			case CompiledExpression.STORE:
+				t[operand] = s[sp - 1];
+				break;
+			case CompiledExpression.LOAD:
+				s[sp++] = t[operand];
+				break;
+			default:
+				sp--;
+				s[sp - 1] = CompiledExpression.apply(c & CompiledExpression.OP_MASK, s[sp - 1], s[sp]);
+			}
+		}
+		return new Entry(s[0], ce, Arrays.copyOf(slots, reads), Arrays.copyOf(indexes, reads),
+				Arrays.copyOf(values, reads));
+	}
+
+	/**
+	 * Returns the expression with whitespace removed, as Expression.evaluate reads it.
+	 */
+	private static String normalize(String expr) {
+		int i = 0;
+		while (i < expr.length() && !Expression.isSpace(expr.charAt(i))) {
+			i++;
+		}
+		if (i == expr.length()) {
+			return expr;
+		}
+		StringBuilder sb = new StringBuilder(expr.length());
+		for (int j = 0; j < expr.length(); j++) {
+			if (!Expression.isSpace(expr.charAt(j))) {
+				sb.append(expr.charAt(j));
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Drops the results that read a symbol.
+	 *
+	 * @param name Name of a simple variable or array
+	 */
+	public synchronized void invalidate(String name) {
+		Iterator<Entry> it = results.values().iterator();
+		while (it.hasNext()) {
+			CompiledExpression ce = it.next().ce;
+			if (ce.variableSlot(name) != -1 || ce.arraySlot(name) != -1) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Drops, from every cache, the results that read any of a list of symbols.
+	 * Called by Expression.loadVariableValues.
+	 */
+	static void invalidateAll(ArrayList<String> names) {
+		HashSet<String> loaded = new HashSet<String>(names);
+		ExpressionCache[] caches;
+		synchronized (CACHES) {
+			caches = CACHES.toArray(new ExpressionCache[0]);
+		}
+		for (ExpressionCache cache : caches) {
+			synchronized (cache) {
+				Iterator<Entry> it = cache.results.values().iterator();
+				while (it.hasNext()) {
+					if (reads(it.next().ce, loaded)) {
+						it.remove();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tells if a compiled expression reads any of a set of symbols.
+	 */
+	private static boolean reads(CompiledExpression ce, HashSet<String> names) {
+		for (String name : ce.variableNames) {
+			if (names.contains(name)) {
+				return true;
+			}
+		}
+		for (String name : ce.arrayNames) {
+			if (names.contains(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tells if any cache may hold results, so loaders can skip collecting names.
+	 */
+	static boolean isActive() {
+		return !CACHES.isEmpty();
+	}
+
+	/**
+	 * Drops all results and compiled expressions. The counters are kept.
+	 */
+	public synchronized void clear() {
+		results.clear();
+		compiled.clear();
+	}
+
+	/**
+	 * Returns the number of results held.
+	 *
+	 * @return Number of results
+	 */
+	public synchronized int size() {
+		return results.size();
+	}
+
+	/**
+	 * Returns the number of evaluations answered from the cache.
+	 *
+	 * @return Number of hits
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of evaluations that had to be computed.
+	 *
+	 * @return Number of misses
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of results dropped to keep within capacity.
+	 *
+	 * @return Number of evictions
+	 */
+	public synchronized long evictions() {
+		return evictions;
+	}
+}
@@ -0,0 +1,138 @@
+package app;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/**
+ * Checks Expression and CompiledExpression against known results, for cases
+ * that went wrong once:
+ *    - variable lists changed in place between evaluations
+ *    - deeply nested parentheses and subscripts
+ *    - malformed expressions, which must fail with IllegalArgumentException
+ *
+ * Throws IllegalStateException at the first wrong result.
+ *
+ * Usage: java app.ExpressionCheck
+ *
+ */
+public class ExpressionCheck {
+
+	/**
+	 * Nesting depth of checkDeepNesting
+	 */
+	private static final int DEEP = 20000;
+
+	public static void main(String[] args)
+	throws IOException {
+		checkReplacedSymbols();
+		checkDeepNesting();
+		checkMalformed();
+		System.out.println("expressions ok");
+	}
+
+	/**
+	 * Replaces list items in place, keeping the list sizes, so the per thread
+	 * SymbolTable must notice that its slots are stale.
+	 */
+	private static void checkReplacedSymbols()
+	throws IOException {
+		ArrayList<Variable> vars = new ArrayList<>();
+		ArrayList<Array> arrays = new ArrayList<>();
+		Expression.makeVariableLists("a + A[0]", vars, arrays);
+		vars.get(0).value = 1;
+		arrays.get(0).values = new int[] { 10 };
+		check("a + A[0]", 11, Expression.evaluate("a + A[0]", vars, arrays));
+
+		Variable b = new Variable("b");
+		b.value = 7;
+		vars.clear();
+		vars.add(b);
+		check("b", 7, Expression.evaluate("b", vars, arrays));
+		try {
+			Expression.compile("a + 1").bind(vars, arrays);
+			throw new IllegalStateException("a was found in place of b");
+		} catch (IllegalArgumentException e) {
+			// a is gone
+		}
+
+		Variable c = new Variable("c");
+		c.value = 3;
+		vars.set(0, c);
+		Array cc = new Array("C");
+		cc.values = new int[] { 5 };
+		arrays.set(0, cc);
+		check("c * 2 + C[0]", 11, Expression.evaluate("c * 2 + C[0]", vars, arrays));
+		check("compiled c * 2 + C[0]", 11, Expression.compile("c * 2 + C[0]").bind(vars, arrays).evaluate());
+
+		Path file = Files.createTempFile("values", ".txt");
+		try {
+			Files.write(file, "b 9\nc 5\nC 1 (0,4)\n".getBytes());
+			vars.add(b);
+			vars.set(0, new Variable("a"));
+			vars.set(1, c);
+			Expression.loadVariableValues(file, vars, arrays);
+			check("loaded c", 5, c.value);
+			check("unloaded b", 7, b.value);
+			check("loaded C[0]", 4, cc.get(0));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Compiles expressions nested far deeper than a recursive parser could follow.
+	 */
+	private static void checkDeepNesting() {
+		ArrayList<Variable> vars = new ArrayList<>();
+		ArrayList<Array> arrays = new ArrayList<>();
+		Expression.makeVariableLists("a + A[0]", vars, arrays);
+		vars.get(0).value = 2;
+		arrays.get(0).values = new int[] { 0, 1 };
+
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < DEEP; i++) {
+			sb.append("(a+");
+		}
+		sb.append('1');
+		for (int i = 0; i < DEEP; i++) {
+			sb.append(')');
+		}
+		String expr = sb.toString();
+		check("right nested", Expression.evaluate(expr, vars, arrays),
+				Expression.compile(expr).bind(vars, arrays).evaluate());
+
+		expr = "(".repeat(DEEP) + "a" + ")".repeat(DEEP);
+		check("parenthesized", 2, Expression.compile(expr).bind(vars, arrays).evaluate());
+
+		expr = "A[".repeat(DEEP) + "1" + "]".repeat(DEEP);
+		check("subscripted", 1, Expression.compile(expr).bind(vars, arrays).evaluate());
+	}
+
+	/**
+	 * Evaluates malformed expressions, including ones with unknown names and with
+	 * malformed subscripts that could take the operands around them.
+	 */
+	private static void checkMalformed() {
+		ArrayList<Variable> vars = new ArrayList<>();
+		ArrayList<Array> arrays = new ArrayList<>();
+		Expression.makeVariableLists("a + A[0]", vars, arrays);
+		arrays.get(0).values = new int[] { 0, 1, 2 };
+		String[] malformed = { "a+", "a*", "-3", "x+1", "a+x", "*a", "a+A[+1]", "A[1*]", "(1)(2)", "()", "a+()" };
+		for (String expr : malformed) {
+			try {
+				Expression.evaluate(expr, vars, arrays);
+			} catch (IllegalArgumentException e) {
+				continue;
+			}
+			throw new IllegalStateException(expr + " was not rejected");
+		}
+	}
+
+	private static void check(String label, float expected, float actual) {
+		if (expected != actual) {
+			throw new IllegalStateException(label + ": expected " + expected + ", got " + actual);
+		}
+	}
+}
@@ -0,0 +1,332 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class keeps the value of every subexpression of a compiled expression,
+ * so that when a simple variable or an array item changes, only the
+ * subexpressions that depend on it are evaluated again, like cells in a
+ * spreadsheet.
+ *
+ * Each instruction of the postfix code (except STORE and LOAD, which only share
+ * subexpressions found by CompiledExpression.optimize) is a node of a graph,
+ * with edges from operands to the operations that use them. A simple variable
+ * is read by its VAR nodes. An array item is read by the ARRAY nodes whose
+ * index currently evaluates to it, so array dependencies follow the indexes as
+ * they change.
+ *
+ * setVariable and setArrayValue write the new value through to the bound
+ * Variable or Array and mark the nodes that read it. value then evaluates the
+ * marked nodes in postfix order, which puts operands before the operations that
+ * use them, and marks an operation only if an operand's value actually changed.
+ * Changes made directly to the bound instances, such as by
+ * Expression.loadVariableValues, are not seen until refresh is called.
+ *
+ * An incremental expression is not thread safe.
+ *
+ */
+public class IncrementalExpression {
+
+	private final CompiledExpression ce;
+
+	/**
+	 * Opcode and operand (constant index or slot) of each node, in postfix order
+	 */
+	private final int[] ops, operands;
+
+	/**
+	 * Operand nodes of each node, -1 if none
+	 */
+	private final int[] left, right;
+
+	/**
+	 * Nodes using each node, as the range parentStart[i]..parentStart[i+1]-1 of parents
+	 */
+	private final int[] parentStart, parents;
+
+	/**
+	 * VAR nodes of each variable slot, and ARRAY nodes of each array slot
+	 */
+	private final int[][] variableReaders, arrayReaders;
+
+	/**
+	 * Value of each node, and for ARRAY nodes the index last read
+	 */
+	private final float[] values;
+	private final int[] indexes;
+
+	/**
+	 * Marked nodes, as a binary min-heap of node numbers, and whether each node is in it
+	 */
+	private int[] heap;
+	private int heapSize;
+	private final boolean[] queued;
+
+	/**
+	 * Number of nodes evaluated by the last call to value
+	 */
+	private int recomputed;
+
+	/**
+	 * Builds the graph of a compiled expression and evaluates it.
+	 *
+	 * @param ce Compiled expression, possibly optimized
+	 * @param vars The variables array list, with values for all variables in the expression
+	 * @param arrays The arrays array list, with values for all array items
+	 * @throws IllegalArgumentException If a variable or array of the expression is not in the lists
+	 */
+	public IncrementalExpression(CompiledExpression ce, ArrayList<Variable> vars, ArrayList<Array> arrays)
+	throws IllegalArgumentException {
+		this.ce = ce;
+		ce.bind(vars, arrays);
+		int[] code = ce.code;
+		int n = 0;
+		for (int c : code) {
+			int op = c & CompiledExpression.OP_MASK;
+			if (op != CompiledExpression.STORE && op != CompiledExpression.LOAD) {
+				n++;
+			}
+		}
+		ops = new int[n];
+		operands = new int[n];
+		left = new int[n];
+		right = new int[n];
+		int[] stack = new int[Math.max(1, ce.maxDepth)];
+		int[] temps = new int[ce.temps];
+		int[] parentCount = new int[n + 1];
+		int sp = 0, node = 0;
+		for (int c : code) {
+			int op = c & CompiledExpression.OP_MASK;
+			int operand = c >>> CompiledExpression.OP_BITS;
+			if (op == CompiledExpression.STORE) {
+				temps[operand] = stack[sp - 1];
+				continue;
+			}
+			if (op == CompiledExpression.LOAD) {
+				stack[sp++] = temps[operand];
+				continue;
+			}
+			ops[node] = op;
+			operands[node] = operand;
+			left[node] = -1;
+			right[node] = -1;
+			if (op == CompiledExpression.ARRAY) {
+				left[node] = stack[--sp];
+			} else if (op >= CompiledExpression.ADD) {
+				right[node] = stack[--sp];
+				left[node] = stack[--sp];
+			}
+			if (left[node] != -1) {
+				parentCount[left[node]]++;
+			}
+			if (right[node] != -1) {
+				parentCount[right[node]]++;
+			}
+			stack[sp++] = node++;
+		}
+
+		// compressed parent lists
+		parentStart = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			parentStart[i + 1] = parentStart[i] + parentCount[i];
+		}
+		parents = new int[parentStart[n]];
+		int[] fill = Arrays.copyOf(parentStart, n);
+		for (int i = 0; i < n; i++) {
+			if (left[i] != -1) {
+				parents[fill[left[i]]++] = i;
+			}
+			if (right[i] != -1) {
+				parents[fill[right[i]]++] = i;
+			}
+		}
+		variableReaders = readers(CompiledExpression.VAR, ce.variableNames.length);
+		arrayReaders = readers(CompiledExpression.ARRAY, ce.arrayNames.length);
+
+		values = new float[n];
+		indexes = new int[n];
+		heap = new int[16];
+		queued = new boolean[n];
+		refresh();
+	}
+
+	/**
+	 * Lists the nodes with an opcode, by slot.
+	 */
+	private int[][] readers(int op, int slots) {
+		int[] count = new int[slots];
+		for (int i = 0; i < ops.length; i++) {
+			if (ops[i] == op) {
+				count[operands[i]]++;
+			}
+		}
+		int[][] readers = new int[slots][];
+		for (int s = 0; s < slots; s++) {
+			readers[s] = new int[count[s]];
+			count[s] = 0;
+		}
+		for (int i = 0; i < ops.length; i++) {
+			if (ops[i] == op) {
+				readers[operands[i]][count[operands[i]]++] = i;
+			}
+		}
+		return readers;
+	}
+
+	/**
+	 * Evaluates every node again from the current values of the bound variables and arrays.
+	 *
+	 * @return Result of evaluation
+	 */
+	public float refresh() {
+		heapSize = 0;
+		Arrays.fill(queued, false);
+		for (int i = 0; i < ops.length; i++) {
+			values[i] = compute(i);
+		}
+		recomputed = ops.length;
+		return values[ops.length - 1];
+	}
+
+	/**
+	 * Sets the value of a simple variable of the expression.
+	 *
+	 * @param name Name of variable
+	 * @param value New value
+	 * @throws IllegalArgumentException If the expression has no such variable
+	 */
+	public void setVariable(String name, int value)
+	throws IllegalArgumentException {
+		int slot = ce.variableSlot(name);
+		if (slot == -1) {
+			throw new IllegalArgumentException("no variable " + name);
+		}
+		Variable var = ce.variables[slot];
+		if (var.value == value) {
+			return;
+		}
+		var.value = value;
+		for (int node : variableReaders[slot]) {
+			mark(node);
+		}
+	}
+
+	/**
+	 * Sets the value of an item of an array of the expression.
+	 *
+	 * @param name Name of array
+	 * @param index Index of item
+	 * @param value New value
+	 * @throws IllegalArgumentException If the expression has no such array
+	 * @throws ArrayIndexOutOfBoundsException If index is out of the bounds of the array
+	 */
+	public void setArrayValue(String name, int index, int value)
+	throws IllegalArgumentException {
+		int slot = ce.arraySlot(name);
+		if (slot == -1) {
+			throw new IllegalArgumentException("no array " + name);
+		}
+		Array arr = ce.arrays[slot];
+		if (arr.get(index) == value) {
+			return;
+		}
+		arr.set(index, value);
+		for (int node : arrayReaders[slot]) {
+			if (indexes[node] == index) {
+				mark(node);
+			}
+		}
+	}
+
+	/**
+	 * Returns the value of the expression, evaluating the subexpressions affected
+	 * by changes since the last call.
+	 *
+	 * @return Result of evaluation
+	 */
+	public float value() {
+		recomputed = 0;
+		while (heapSize > 0) {
+			int node = poll();
+			queued[node] = false;
+			float v = compute(node);
+			recomputed++;
+			if (Float.floatToIntBits(v) != Float.floatToIntBits(values[node])) {
+				values[node] = v;
+				for (int p = parentStart[node]; p < parentStart[node + 1]; p++) {
+					mark(parents[p]);
+				}
+			}
+		}
+		return values[ops.length - 1];
+	}
+
+	/**
+	 * Returns the number of subexpressions evaluated by the last call to value or refresh.
+	 *
+	 * @return Number of nodes evaluated
+	 */
+	public int recomputed() {
+		return recomputed;
+	}
+
+	/**
+	 * Evaluates a node from the values of its operands.
+	 */
+	private float compute(int node) {
+		int operand = operands[node];
+		switch (ops[node]) {
+		case CompiledExpression.CONST:
+			return ce.constants[operand];
+		case CompiledExpression.VAR:
+			return (float)ce.variables[operand].value;
+		case CompiledExpression.ARRAY:
+			indexes[node] = (int)values[left[node]];
+			return (float)ce.arrays[operand].get(indexes[node]);
+		default:
+			return CompiledExpression.apply(ops[node], values[left[node]], values[right[node]]);
+		}
+	}
+
+	/**
+	 * Adds a node to the heap, unless it is already there.
+	 */
+	private void mark(int node) {
+		if (queued[node]) {
+			return;
+		}
+		queued[node] = true;
+		if (heapSize == heap.length) {
+			heap = Arrays.copyOf(heap, heapSize * 2);
+		}
+		int i = heapSize++;
+		while (i > 0 && heap[(i - 1) / 2] > node) {
+			heap[i] = heap[(i - 1) / 2];
+			i = (i - 1) / 2;
+		}
+		heap[i] = node;
+	}
+
+	/**
+	 * Removes and returns the smallest node of the heap.
+	 */
+	private int poll() {
+		int top = heap[0];
+		int last = heap[--heapSize];
+		int i = 0;
+		while (2 * i + 1 < heapSize) {
+			int child = 2 * i + 1;
+			if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+				child++;
+			}
+			if (heap[child] >= last) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = last;
+		return top;
+	}
+}
@@ -0,0 +1,18 @@
+package app;
+
+/**
+ * Interface of the classes generated by BytecodeCompiler: straight-line code for
+ * one compiled expression, reading variables and arrays by slot.
+ *
+ */
+interface Kernel {
+
+	/**
+	 * Evaluates the expression.
+	 *
+	 * @param variables Variables bound to the slots
+	 * @param arrays Arrays bound to the slots
+	 * @return Result of evaluation
+	 */
+	float evaluate(Variable[] variables, Array[] arrays);
+}
@@ -0,0 +1,132 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Checks the kernels written by BytecodeCompiler against Expression.evaluate.
+ * Each expression is evaluated past the BytecodeCompiler.THRESHOLD switch-over,
+ * then compared with Expression.evaluate for several sets of values. The
+ * expressions read dense, sparse and off-heap arrays, and include ones long
+ * enough to need SIPUSH variable slots, LDC_W constants and WIDE temporaries.
+ *
+ * Throws IllegalStateException at the first wrong result.
+ *
+ * Usage: java app.KernelCheck
+ *
+ */
+public class KernelCheck {
+
+	static Random random = new Random(2024);
+
+	/**
+	 * Sets of values each kernel is checked with
+	 */
+	static final int ROUNDS = 5;
+
+	public static void main(String[] args) {
+		check("arrays", "a*A[b] + B[b*1000+7] - C[16777000+b]/2 + (a-b)/3 - A[B[b*1000+7]]", false);
+
+		// more than 127 variables and 255 constant pool entries
+		StringBuilder sb = new StringBuilder("0");
+		for (int i = 0; i < 300; i++) {
+			sb.append(i % 2 == 0 ? " + " : " - ").append(name(i % 200)).append('*').append(i).append(".25");
+		}
+		check("constants", sb.toString(), false);
+
+		// more than 252 temporaries, all live at once
+		sb = new StringBuilder("0");
+		for (int i = 0; i < 300; i++) {
+			sb.append(" + (a*").append(i).append(".5-b)");
+		}
+		for (int i = 0; i < 300; i++) {
+			sb.append(" + (a*").append(i).append(".5-b)/7");
+		}
+		check("temporaries", sb.toString(), true);
+
+		System.out.println("kernels ok");
+	}
+
+	/**
+	 * Compiles, optionally optimizes and binds an expression, evaluates it past
+	 * the switch-over, and compares the kernel with Expression.evaluate.
+	 */
+	private static void check(String label, String expr, boolean optimize) {
+		ArrayList<Variable> vars = new ArrayList<>();
+		ArrayList<Array> arrays = new ArrayList<>();
+		Expression.makeVariableLists(expr, vars, arrays);
+		for (Array array : arrays) {
+			switch (array.name) {
+			case "A":
+				array.values = new int[10];
+				break;
+			case "B":
+				array.allocate(1 << 20, 100);
+				break;
+			default:
+				array.allocate(Array.MIN_OFF_HEAP_LENGTH, Array.MIN_OFF_HEAP_LENGTH);
+			}
+		}
+		CompiledExpression ce = Expression.compile(expr);
+		if (optimize) {
+			ce = ce.optimize();
+		}
+		ce.bind(vars, arrays);
+		if (ce.code.length > BytecodeCompiler.MAX_CODE) {
+			throw new IllegalStateException(label + ": expression too large to compile");
+		}
+		if (optimize && 3 + ce.temps <= 255) {
+			throw new IllegalStateException(label + ": temporaries do not need WIDE");
+		}
+		setValues(vars, arrays);
+		for (int i = 0; i <= BytecodeCompiler.THRESHOLD; i++) {
+			ce.evaluate();
+		}
+		Kernel kernel = BytecodeCompiler.compile(ce);
+		if (kernel == null) {
+			throw new IllegalStateException(label + ": not compiled");
+		}
+		for (int round = 0; round < ROUNDS; round++) {
+			float expected = Expression.evaluate(expr, vars, arrays);
+			if (!same(expected, ce.evaluate()) || !same(expected, kernel.evaluate(ce.variables, ce.arrays))) {
+				throw new IllegalStateException(label + ": kernel returned a wrong result");
+			}
+			setValues(vars, arrays);
+		}
+	}
+
+	/**
+	 * Sets variables to small values, and every array item that an expression
+	 * above reads to a value that keeps the nested index in bounds.
+	 */
+	private static void setValues(ArrayList<Variable> vars, ArrayList<Array> arrays) {
+		for (Variable var : vars) {
+			var.value = var.name.equals("b") ? 1 + random.nextInt(9) : random.nextInt(19) - 9;
+		}
+		for (Array array : arrays) {
+			for (int i = 0; i < 10; i++) {
+				int index = array.name.equals("B") ? i * 1000 + 7 : array.name.equals("C") ? 16777000 + i : i;
+				array.set(index, random.nextInt(10));
+			}
+		}
+	}
+
+	/**
+	 * Tells if two results are the same float, counting all NaNs as the same.
+	 */
+	private static boolean same(float x, float y) {
+		return Float.floatToIntBits(x) == Float.floatToIntBits(y);
+	}
+
+	/**
+	 * Returns a variable name made of letters only.
+	 */
+	private static String name(int i) {
+		StringBuilder sb = new StringBuilder("v");
+		do {
+			sb.append((char)('a' + i % 26));
+			i /= 26;
+		} while (i > 0);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,92 @@
+package app;
+
+/**
+ * This class holds a node of the parse tree built by Parser. A node is a
+ * constant, a simple variable, an array item whose index is the left subtree,
+ * or an arithmetic operation on its left and right subtrees.
+ *
+ */
+final class Node {
+
+	/**
+	 * Operation, one of the opcodes in CompiledExpression
+	 */
+	final int op;
+
+	/**
+	 * Value of a constant
+	 */
+	final float constant;
+
+	/**
+	 * Text of a constant as written in the expression, null for other nodes and
+	 * for constants computed by Optimizer
+	 */
+	final String text;
+
+	/**
+	 * Name of a variable or array, null for other nodes
+	 */
+	final String name;
+
+	/**
+	 * Operands: the index of an array item, or the two sides of an operation
+	 */
+	final Node left, right;
+
+	Node(int op, float constant, String text, String name, Node left, Node right) {
+		this.op = op;
+		this.constant = constant;
+		this.text = text;
+		this.name = name;
+		this.left = left;
+		this.right = right;
+	}
+
+	/**
+	 * Returns a constant node, computed rather than written in the expression.
+	 */
+	static Node constant(float value) {
+		return new Node(CompiledExpression.CONST, value, null, null, null, null);
+	}
+
+	/**
+	 * Returns a constant node for a number written in the expression.
+	 */
+	static Node constant(String text) {
+		return new Node(CompiledExpression.CONST, Float.parseFloat(text), text, null, null, null);
+	}
+
+	/**
+	 * Returns a simple variable node.
+	 */
+	static Node variable(String name) {
+		return new Node(CompiledExpression.VAR, 0, null, name, null, null);
+	}
+
+	/**
+	 * Returns an array item node.
+	 */
+	static Node array(String name, Node index) {
+		return new Node(CompiledExpression.ARRAY, 0, null, name, index, null);
+	}
+
+	/**
+	 * Returns an operation node.
+	 */
+	static Node operation(int op, Node left, Node right) {
+		return new Node(op, 0, null, null, left, right);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		switch (op) {
+		case CompiledExpression.CONST: return text != null ? text : Float.toString(constant);
+		case CompiledExpression.VAR: return name;
+		case CompiledExpression.ARRAY: return name + "[" + left + "]";
+		default: return "(" + left + " " + "+-*/".charAt(op - CompiledExpression.ADD) + " " + right + ")";
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package app;
+
+/**
+ * Arithmetic used to evaluate an expression (see CompiledExpression.evaluate(NumericMode)).
+ * Each mode has its own evaluation loop, so the mode is chosen once per
+ * evaluation rather than once per operation.
+ *
+ */
+public enum NumericMode {
+
+	/**
+	 * float arithmetic, as Expression.evaluate
+	 */
+	FLOAT,
+
+	/**
+	 * double arithmetic
+	 */
+	DOUBLE,
+
+	/**
+	 * long integer arithmetic: division truncates toward zero, and overflow,
+	 * division by zero and constants that are not integers throw ArithmeticException
+	 */
+	LONG,
+
+	/**
+	 * Exact rational arithmetic on big integers (see Rational): division by zero
+	 * throws ArithmeticException
+	 */
+	EXACT
+}
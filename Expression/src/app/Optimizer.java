@@ -0,0 +1,103 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * This class optimizes compiled expressions (see CompiledExpression.optimize).
+ * The parse tree is rebuilt bottom up:
+ *    - an operation whose operands are both constants is replaced by a constant
+ *      holding its float result, which is exactly what evaluation would compute
+ *    - every node is hash-consed, so identical subexpressions become one shared
+ *      node, which CompiledExpression evaluates once and then reads back from a
+ *      temporary
+ * Nothing else is rewritten, since identities such as x+0 or x*1 do not hold
+ * for all floats. Since folding is done in float arithmetic, the other numeric
+ * modes of CompiledExpression evaluate the expression as written instead.
+ *
+ */
+final class Optimizer {
+
+	// prevent instantiation
+	private Optimizer() { }
+
+	/**
+	 * Identifies a node by its operation, constant, text, name and (identical) operands
+	 */
+	private static final class Key {
+		private final Node node;
+
+		Key(Node node) {
+			this.node = node;
+		}
+
+		public int hashCode() {
+			int h = node.op;
+			h = 31 * h + Float.floatToIntBits(node.constant);
+			h = 31 * h + (node.text == null ? 0 : node.text.hashCode());
+			h = 31 * h + (node.name == null ? 0 : node.name.hashCode());
+			h = 31 * h + System.identityHashCode(node.left);
+			h = 31 * h + System.identityHashCode(node.right);
+			return h;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Node other = ((Key)o).node;
+			return node.op == other.op
+					&& Float.floatToIntBits(node.constant) == Float.floatToIntBits(other.constant)
+					&& (node.text == null ? other.text == null : node.text.equals(other.text))
+					&& (node.name == null ? other.name == null : node.name.equals(other.name))
+					&& node.left == other.left && node.right == other.right;
+		}
+	}
+
+	/**
+	 * Optimizes a compiled expression.
+	 *
+	 * @param ce Compiled expression
+	 * @return Optimized compiled expression, not bound
+	 */
+	static CompiledExpression optimize(CompiledExpression ce) {
+		ArrayList<Node> postfix = CompiledExpression.postfix(ce.root);
+		IdentityHashMap<Node, Node> canonical = new IdentityHashMap<Node, Node>();
+		HashMap<Key, Node> nodes = new HashMap<Key, Node>();
+		for (Node node : postfix) {
+			if (canonical.containsKey(node)) { // already shared
+				continue;
+			}
+			Node left = node.left == null ? null : canonical.get(node.left);
+			Node right = node.right == null ? null : canonical.get(node.right);
+			Node n;
+			if (node.op >= CompiledExpression.ADD
+					&& left.op == CompiledExpression.CONST && right.op == CompiledExpression.CONST) {
+				n = Node.constant(CompiledExpression.apply(node.op, left.constant, right.constant));
+			} else if (left == node.left && right == node.right) {
+				n = node;
+			} else {
+				n = new Node(node.op, node.constant, node.text, node.name, left, right);
+			}
+			Node shared = nodes.get(new Key(n));
+			if (shared == null) {
+				nodes.put(new Key(n), n);
+				shared = n;
+			}
+			canonical.put(node, shared);
+		}
+		CompiledExpression optimized = new CompiledExpression(ce.expr, canonical.get(ce.root));
+
+		// nodes evaluated per evaluation: every instruction but STORE, where a LOAD
+		// stands for a whole repeated subexpression
+		int evaluated = 0;
+		for (int c : optimized.code) {
+			if ((c & CompiledExpression.OP_MASK) != CompiledExpression.STORE) {
+				evaluated++;
+			}
+		}
+		optimized.removedNodes = postfix.size() - evaluated;
+		return optimized;
+	}
+}
@@ -0,0 +1,282 @@
+package app;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class evaluates a large compiled expression on the common ForkJoinPool.
+ *
+ * In postfix code every subexpression is a contiguous range of instructions
+ * ending at its root. An operation is a fork point when both of its operands
+ * have at least FORK_COST instructions; its operands are evaluated in parallel.
+ * The rest of the code is cut into segments at the fork points: a segment is
+ * a copy of a range of the code in which each fork point it contains is replaced
+ * by a RESULT instruction that pushes the value computed for it by another task.
+ * Segments are run by the same loop as CompiledExpression.evaluate, so long
+ * chains of operations need no recursion, and only the nesting of fork points
+ * is recursive.
+ *
+ * Subexpressions shared by Optimizer are copied back in place of their LOAD
+ * instructions first, since the task that would STORE one may run at the same
+ * time as a task that LOADs it.
+ *
+ * The plan is built once per compiled expression, and can be evaluated by any
+ * number of threads at the same time.
+ *
+ */
+final class ParallelEvaluator {
+
+	/**
+	 * Smallest number of instructions in both operands of a fork point
+	 */
+	static final int FORK_COST = 2048;
+
+	/**
+	 * Opcode that pushes the value of input operand
+	 */
+	static final int RESULT = 9;
+
+	/**
+	 * A fork point, or a segment of code
+	 */
+	private static final class Plan {
+
+		/**
+		 * Operation of a fork point, -1 for a segment
+		 */
+		final int op;
+
+		/**
+		 * Operands of a fork point
+		 */
+		final Plan left, right;
+
+		/**
+		 * Code of a segment, the plans whose values its RESULT instructions push,
+		 * and the largest number of values on its stack
+		 */
+		final int[] code;
+		final Plan[] inputs;
+		final int maxDepth;
+
+		Plan(int op, Plan left, Plan right) {
+			this.op = op;
+			this.left = left;
+			this.right = right;
+			code = null;
+			inputs = null;
+			maxDepth = 0;
+		}
+
+		Plan(int[] code, Plan[] inputs, int maxDepth) {
+			op = -1;
+			left = null;
+			right = null;
+			this.code = code;
+			this.inputs = inputs;
+			this.maxDepth = maxDepth;
+		}
+	}
+
+	private final CompiledExpression ce;
+	private final Plan root;
+
+	/**
+	 * Code of the expression, without STORE and LOAD
+	 */
+	private final int[] code;
+
+	/**
+	 * Index of the first instruction of the subexpression ending at each instruction
+	 */
+	private final int[] start;
+
+	/**
+	 * Builds the plan of a compiled expression.
+	 *
+	 * @param ce Compiled expression
+	 */
+	ParallelEvaluator(CompiledExpression ce) {
+		this.ce = ce;
+		// copy shared subexpressions to where they are loaded, finding the start of
+		// the subexpression ending at each instruction on the way
+		int[] code = new int[ce.code.length];
+		int[] start = new int[code.length];
+		int[] tempStart = new int[ce.temps], tempEnd = new int[ce.temps];
+		int length = 0;
+		for (int c : ce.code) {
+			int op = c & CompiledExpression.OP_MASK;
+			int operand = c >>> CompiledExpression.OP_BITS;
+			if (op == CompiledExpression.STORE) {
+				tempStart[operand] = start[length - 1];
+				tempEnd[operand] = length;
+				continue;
+			}
+			if (op == CompiledExpression.LOAD) {
+				int n = tempEnd[operand] - tempStart[operand];
+				if (length + n > code.length) {
+					code = Arrays.copyOf(code, Math.max(length + n, code.length * 2));
+					start = Arrays.copyOf(start, code.length);
+				}
+				int shift = length - tempStart[operand];
+				for (int i = tempStart[operand]; i < tempEnd[operand]; i++) {
+					code[i + shift] = code[i];
+					start[i + shift] = start[i] + shift;
+				}
+				length += n;
+				continue;
+			}
+			if (length == code.length) {
+				code = Arrays.copyOf(code, code.length * 2);
+				start = Arrays.copyOf(start, code.length);
+			}
+			code[length] = c;
+			switch (op) {
+			case CompiledExpression.CONST:
+			case CompiledExpression.VAR:
+				start[length] = length;
+				break;
+			case CompiledExpression.ARRAY:
+				start[length] = start[length - 1];
+				break;
+			default:
+				start[length] = start[start[length - 1] - 1];
+			}
+			length++;
+		}
+		this.code = Arrays.copyOf(code, length);
+		this.start = Arrays.copyOf(start, length);
+		root = plan(length - 1);
+	}
+
+	/**
+	 * Tells if the instruction at i is a fork point.
+	 */
+	private boolean isFork(int i) {
+		int op = code[i] & CompiledExpression.OP_MASK;
+		if (op < CompiledExpression.ADD) {
+			return false;
+		}
+		int rightStart = start[i - 1];
+		return i - rightStart >= FORK_COST && rightStart - start[rightStart - 1] >= FORK_COST;
+	}
+
+	/**
+	 * Builds the plan of the subexpression ending at instruction end.
+	 */
+	private Plan plan(int end) {
+		if (isFork(end)) {
+			int rightStart = start[end - 1];
+			return new Plan(code[end] & CompiledExpression.OP_MASK, plan(rightStart - 1), plan(end - 1));
+		}
+		// walk back from the root: each position reached is the root of a
+		// subexpression, which is either copied or, if a fork point, skipped
+		int length = 0, inputCount = 0;
+		for (int i = end; i >= start[end]; i--) {
+			if (i != end && isFork(i)) {
+				inputCount++;
+				i = start[i];
+			}
+			length++;
+		}
+		int[] segment = new int[length];
+		Plan[] inputs = new Plan[inputCount];
+		int k = length;
+		int input = inputCount;
+		for (int i = end; i >= start[end]; i--) {
+			if (i != end && isFork(i)) {
+				inputs[--input] = plan(i);
+				segment[--k] = RESULT | input << CompiledExpression.OP_BITS;
+				i = start[i];
+			} else {
+				segment[--k] = code[i];
+			}
+		}
+		int depth = 0, maxDepth = 0;
+		for (int c : segment) {
+			int op = c & CompiledExpression.OP_MASK;
+			if (op == CompiledExpression.CONST || op == CompiledExpression.VAR || op == RESULT) {
+				depth++;
+			} else if (op != CompiledExpression.ARRAY) {
+				depth--;
+			}
+			maxDepth = Math.max(maxDepth, depth);
+		}
+		return new Plan(segment, inputs, maxDepth);
+	}
+
+	/**
+	 * Evaluates the expression with the current values of its bound variables and arrays.
+	 */
+	float evaluate() {
+		return ForkJoinPool.commonPool().invoke(new Task(root));
+	}
+
+	private final class Task extends RecursiveTask<Float> {
+		private static final long serialVersionUID = 1L;
+		private final Plan plan;
+
+		Task(Plan plan) {
+			this.plan = plan;
+		}
+
+		protected Float compute() {
+			return run(plan);
+		}
+
+		private float run(Plan plan) {
+			if (plan.op != -1) {
+				Task left = new Task(plan.left);
+				left.fork();
+				float b = run(plan.right);
+				float a = left.join();
+				return CompiledExpression.apply(plan.op, a, b);
+			}
+			Plan[] inputs = plan.inputs;
+			float[] results = new float[inputs.length];
+			if (inputs.length > 0) {
+				Task[] tasks = new Task[inputs.length - 1];
+				for (int i = 0; i < tasks.length; i++) {
+					tasks[i] = new Task(inputs[i]);
+					tasks[i].fork();
+				}
+				results[inputs.length - 1] = run(inputs[inputs.length - 1]);
+				for (int i = tasks.length - 1; i >= 0; i--) {
+					results[i] = tasks[i].join();
+				}
+			}
+			return execute(plan, results);
+		}
+	}
+
+	/**
+	 * Runs the code of a segment, given the values of its inputs.
+	 */
+	private float execute(Plan plan, float[] results) {
+		int[] code = plan.code;
+		float[] s = new float[plan.maxDepth];
+		int sp = 0;
+		for (int i = 0; i < code.length; i++) {
+			int c = code[i];
+			switch (c & CompiledExpression.OP_MASK) {
+			case CompiledExpression.CONST:
+				s[sp++] = ce.constants[c >>> CompiledExpression.OP_BITS];
+				break;
+			case CompiledExpression.VAR:
+				s[sp++] = (float)ce.variables[c >>> CompiledExpression.OP_BITS].value;
+				break;
+			case CompiledExpression.ARRAY:
+				s[sp - 1] = (float)ce.arrays[c >>> CompiledExpression.OP_BITS].get((int)s[sp - 1]);
+				break;
+			case RESULT:
+				s[sp++] = results[c >>> CompiledExpression.OP_BITS];
+				break;
+			default:
+				sp--;
+				s[sp - 1] = CompiledExpression.apply(c & CompiledExpression.OP_MASK, s[sp - 1], s[sp]);
+			}
+		}
+		return s[0];
+	}
+}
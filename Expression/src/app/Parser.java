@@ -0,0 +1,197 @@
+package app;
+
+import structures.ByteStack;
+import structures.Stack;
+
+/**
+ * This class parses an expression into a tree of Nodes, following the grammar
+ *
+ *    sum     := product (('+' | '-') product)*
+ *    product := primary (('*' | '/') primary)*
+ *    primary := number | name | name '[' sum ']' | '(' sum ')'
+ *
+ * where a name is a sequence of letters and a number is a sequence of digits
+ * with at most one decimal point. Operators of equal precedence group left to
+ * right, and whitespace is ignored, exactly as in Expression.evaluate.
+ *
+ * The parse is a shunting-yard over explicit operand and operator stacks, so
+ * parentheses and subscripts may be nested as deeply as memory allows, without
+ * recursion.
+ *
+ */
+final class Parser {
+
+	/**
+	 * Operator stack markers for an open parenthesis and an open subscript, below
+	 * every CompiledExpression operation code
+	 */
+	private static final byte OPEN = -1, SUBSCRIPT = -2;
+
+	/**
+	 * Expression, with whitespace removed
+	 */
+	private final String expr;
+
+	/**
+	 * Index of the next character to read
+	 */
+	private int pos;
+
+	private final Stack<Node> operands = new Stack<Node>();
+	private final ByteStack operators = new ByteStack();
+
+	/**
+	 * Names of the arrays whose subscripts are open, innermost on top
+	 */
+	private final Stack<String> subscripted = new Stack<String>();
+
+	private Parser(String expr) {
+		this.expr = expr;
+		pos = 0;
+	}
+
+	/**
+	 * Parses an expression.
+	 *
+	 * @param expr The expression
+	 * @return Root of the parse tree
+	 * @throws IllegalArgumentException If the expression is incorrectly formatted
+	 */
+	static Node parse(String expr)
+	throws IllegalArgumentException {
+		return new Parser(expr.replaceAll("\\s", "")).parse();
+	}
+
+	private Node parse() {
+		while (true) {
+			operand();
+			// after an operand: close groups, then an operator or the end
+			while (pos < expr.length() && (expr.charAt(pos) == ')' || expr.charAt(pos) == ']')) {
+				close(expr.charAt(pos) == ')' ? OPEN : SUBSCRIPT);
+				pos++;
+			}
+			if (pos == expr.length()) {
+				break;
+			}
+			char c = expr.charAt(pos);
+			int op = c == '+' ? CompiledExpression.ADD : c == '-' ? CompiledExpression.SUB
+					: c == '*' ? CompiledExpression.MUL : c == '/' ? CompiledExpression.DIV : 0;
+			if (op == 0) {
+				throw unexpected();
+			}
+			while (!operators.isEmpty() && operators.peek() >= 0
+					&& precedence(operators.peek()) >= precedence(op)) {
+				reduce();
+			}
+			operators.push((byte)op);
+			pos++;
+		}
+		while (!operators.isEmpty()) {
+			if (operators.peek() < 0) { // an open parenthesis or subscript
+				throw unexpected();
+			}
+			reduce();
+		}
+		return operands.pop();
+	}
+
+	/**
+	 * Reads the opening parentheses and subscripts before an operand, and the
+	 * operand, pushing them on the stacks.
+	 */
+	private void operand() {
+		while (true) {
+			if (pos == expr.length()) {
+				throw unexpected();
+			}
+			char c = expr.charAt(pos);
+			if (c == '(') {
+				operators.push(OPEN);
+				pos++;
+				continue;
+			}
+			if (isLetter(c)) {
+				int start = pos;
+				while (pos < expr.length() && isLetter(expr.charAt(pos))) {
+					pos++;
+				}
+				String name = expr.substring(start, pos);
+				if (pos < expr.length() && expr.charAt(pos) == '[') {
+					operators.push(SUBSCRIPT);
+					subscripted.push(name);
+					pos++;
+					continue;
+				}
+				operands.push(Node.variable(name));
+				return;
+			}
+			if (isDigit(c) || c == '.') {
+				int start = pos;
+				boolean point = false, digit = false;
+				while (pos < expr.length()) {
+					c = expr.charAt(pos);
+					if (isDigit(c)) {
+						digit = true;
+					} else if (c == '.' && !point) {
+						point = true;
+					} else {
+						break;
+					}
+					pos++;
+				}
+				if (!digit) {
+					pos = start;
+					throw unexpected();
+				}
+				operands.push(Node.constant(expr.substring(start, pos)));
+				return;
+			}
+			throw unexpected();
+		}
+	}
+
+	/**
+	 * Reduces the operations above the innermost open parenthesis or subscript,
+	 * which must be of the given kind, and closes it.
+	 */
+	private void close(byte open) {
+		while (!operators.isEmpty() && operators.peek() >= 0) {
+			reduce();
+		}
+		if (operators.isEmpty() || operators.peek() != open) {
+			throw unexpected();
+		}
+		operators.pop();
+		if (open == SUBSCRIPT) {
+			operands.push(Node.array(subscripted.pop(), operands.pop()));
+		}
+	}
+
+	/**
+	 * Replaces the top two operands with the operation on top of the operator stack.
+	 */
+	private void reduce() {
+		Node right = operands.pop();
+		Node left = operands.pop();
+		operands.push(Node.operation(operators.pop(), left, right));
+	}
+
+	private static int precedence(int op) {
+		return op == CompiledExpression.MUL || op == CompiledExpression.DIV ? 2 : 1;
+	}
+
+	private IllegalArgumentException unexpected() {
+		if (pos == expr.length()) {
+			return new IllegalArgumentException("unexpected end of expression " + expr);
+		}
+		return new IllegalArgumentException("unexpected '" + expr.charAt(pos) + "' at " + pos + " in expression " + expr);
+	}
+
+	static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+}
@@ -0,0 +1,287 @@
+package app;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import bigint.BigInteger;
+
+/**
+ * This class holds an exact rational number, as a numerator and a positive
+ * denominator with no common factor, both big integers. It is the result of
+ * evaluating an expression in NumericMode.EXACT.
+ *
+ * Like BigInteger, a rational is never modified, and arithmetic is done by
+ * static methods that return a new rational. Sums and differences of integers
+ * skip the greatest common divisor.
+ *
+ */
+public final class Rational extends Number {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final BigInteger BIG_ONE = BigInteger.valueOf(1);
+
+	/**
+	 * Digits kept by doubleValue before rounding to a double
+	 */
+	private static final MathContext DOUBLE_CONTEXT = new MathContext(40);
+
+	public static final Rational ZERO = new Rational(BigInteger.valueOf(0), BIG_ONE);
+	public static final Rational ONE = new Rational(BIG_ONE, BIG_ONE);
+
+	/**
+	 * Numerator, and denominator, which is positive
+	 */
+	private final BigInteger numerator, denominator;
+
+	private Rational(BigInteger numerator, BigInteger denominator) {
+		this.numerator = numerator;
+		this.denominator = denominator;
+	}
+
+	/**
+	 * Returns an integer as a rational.
+	 *
+	 * @param value Value
+	 * @return Rational holding value
+	 */
+	public static Rational valueOf(long value) {
+		if (value == 0) {
+			return ZERO;
+		}
+		if (value == 1) {
+			return ONE;
+		}
+		return new Rational(BigInteger.valueOf(value), BIG_ONE);
+	}
+
+	/**
+	 * Returns a quotient of big integers as a rational, in lowest terms.
+	 *
+	 * @param numerator Numerator
+	 * @param denominator Denominator
+	 * @return Rational holding numerator / denominator
+	 * @throws ArithmeticException If denominator is zero
+	 */
+	public static Rational valueOf(BigInteger numerator, BigInteger denominator)
+	throws ArithmeticException {
+		if (denominator.signum() == 0) {
+			throw new ArithmeticException("division by zero");
+		}
+		if (denominator.signum() < 0) {
+			numerator = numerator.negate();
+			denominator = denominator.negate();
+		}
+		if (numerator.signum() == 0) {
+			return ZERO;
+		}
+		BigInteger gcd = BigInteger.gcd(numerator, denominator);
+		if (BigInteger.compare(gcd, BIG_ONE) != 0) {
+			numerator = BigInteger.divide(numerator, gcd);
+			denominator = BigInteger.divide(denominator, gcd);
+		}
+		return new Rational(numerator, denominator);
+	}
+
+	/**
+	 * Parses a decimal number, such as a constant of an expression, exactly.
+	 *
+	 * @param decimal Digits with at most one decimal point, and an optional sign
+	 * @return Rational holding the number
+	 * @throws IllegalArgumentException If decimal is incorrectly formatted
+	 */
+	public static Rational parse(String decimal)
+	throws IllegalArgumentException {
+		int point = decimal.indexOf('.');
+		if (point == -1) {
+			return valueOf(BigInteger.parse(decimal), BIG_ONE);
+		}
+		String digits = decimal.substring(0, point) + decimal.substring(point + 1);
+		if (digits.isEmpty() || digits.equals("-") || digits.equals("+")) {
+			throw new IllegalArgumentException(decimal);
+		}
+		StringBuilder power = new StringBuilder("1");
+		for (int i = point + 1; i < decimal.length(); i++) {
+			power.append('0');
+		}
+		return valueOf(BigInteger.parse(digits), BigInteger.parse(power.toString()));
+	}
+
+	/**
+	 * Returns the numerator.
+	 *
+	 * @return Numerator, in lowest terms
+	 */
+	public BigInteger numerator() {
+		return numerator;
+	}
+
+	/**
+	 * Returns the denominator.
+	 *
+	 * @return Denominator, positive and in lowest terms
+	 */
+	public BigInteger denominator() {
+		return denominator;
+	}
+
+	/**
+	 * Returns the sign of this rational.
+	 *
+	 * @return -1, 0 or 1 as this rational is negative, zero or positive
+	 */
+	public int signum() {
+		return numerator.signum();
+	}
+
+	private boolean isInteger() {
+		return BigInteger.compare(denominator, BIG_ONE) == 0;
+	}
+
+	/**
+	 * Adds two rationals.
+	 *
+	 * @param first First rational
+	 * @param second Second rational
+	 * @return first + second
+	 */
+	public static Rational add(Rational first, Rational second) {
+		if (first.isInteger() && second.isInteger()) {
+			return new Rational(BigInteger.add(first.numerator, second.numerator), BIG_ONE);
+		}
+		return valueOf(BigInteger.add(BigInteger.multiply(first.numerator, second.denominator),
+				BigInteger.multiply(second.numerator, first.denominator)),
+				BigInteger.multiply(first.denominator, second.denominator));
+	}
+
+	/**
+	 * Subtracts the second rational from the first.
+	 *
+	 * @param first First rational
+	 * @param second Second rational
+	 * @return first - second
+	 */
+	public static Rational subtract(Rational first, Rational second) {
+		if (first.isInteger() && second.isInteger()) {
+			return new Rational(BigInteger.subtract(first.numerator, second.numerator), BIG_ONE);
+		}
+		return valueOf(BigInteger.subtract(BigInteger.multiply(first.numerator, second.denominator),
+				BigInteger.multiply(second.numerator, first.denominator)),
+				BigInteger.multiply(first.denominator, second.denominator));
+	}
+
+	/**
+	 * Multiplies two rationals.
+	 *
+	 * @param first First rational
+	 * @param second Second rational
+	 * @return first * second
+	 */
+	public static Rational multiply(Rational first, Rational second) {
+		if (first.isInteger() && second.isInteger()) {
+			return new Rational(BigInteger.multiply(first.numerator, second.numerator), BIG_ONE);
+		}
+		return valueOf(BigInteger.multiply(first.numerator, second.numerator),
+				BigInteger.multiply(first.denominator, second.denominator));
+	}
+
+	/**
+	 * Divides the first rational by the second.
+	 *
+	 * @param first First rational
+	 * @param second Second rational
+	 * @return first / second
+	 * @throws ArithmeticException If second is zero
+	 */
+	public static Rational divide(Rational first, Rational second)
+	throws ArithmeticException {
+		return valueOf(BigInteger.multiply(first.numerator, second.denominator),
+				BigInteger.multiply(first.denominator, second.numerator));
+	}
+
+	/**
+	 * Compares two rationals.
+	 *
+	 * @param first First rational
+	 * @param second Second rational
+	 * @return Negative, zero or positive as first is less than, equal to or greater than second
+	 */
+	public static int compare(Rational first, Rational second) {
+		return BigInteger.compare(BigInteger.multiply(first.numerator, second.denominator),
+				BigInteger.multiply(second.numerator, first.denominator));
+	}
+
+	/**
+	 * Returns this rational truncated toward zero, or Integer.MIN_VALUE or
+	 * Integer.MAX_VALUE if that is out of the int range, as a float is cast to int.
+	 */
+	public int intValue() {
+		return (int)truncate(Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns this rational truncated toward zero, or Long.MIN_VALUE or
+	 * Long.MAX_VALUE if that is out of the long range.
+	 */
+	public long longValue() {
+		return truncate(Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	private long truncate(long min, long max) {
+		BigInteger quotient = isInteger() ? numerator : BigInteger.divide(numerator, denominator);
+		if (BigInteger.compare(quotient, BigInteger.valueOf(min)) <= 0) {
+			return min;
+		}
+		if (BigInteger.compare(quotient, BigInteger.valueOf(max)) >= 0) {
+			return max;
+		}
+		return Long.parseLong(quotient.toString());
+	}
+
+	/**
+	 * Returns the nearest float, rounded from doubleValue.
+	 */
+	public float floatValue() {
+		return (float)doubleValue();
+	}
+
+	/**
+	 * Returns the nearest double, rounded from the quotient to 40 digits.
+	 */
+	public double doubleValue() {
+		BigDecimal numerator = new BigDecimal(this.numerator.toString());
+		if (isInteger()) {
+			return numerator.doubleValue();
+		}
+		return numerator.divide(new BigDecimal(denominator.toString()), DOUBLE_CONTEXT).doubleValue();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	public boolean equals(Object o) {
+		if (!(o instanceof Rational)) {
+			return false;
+		}
+		Rational r = (Rational)o;
+		return BigInteger.compare(numerator, r.numerator) == 0
+				&& BigInteger.compare(denominator, r.denominator) == 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	public int hashCode() {
+		return 31 * numerator.toString().hashCode() + denominator.toString().hashCode();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		if (isInteger()) {
+			return numerator.toString();
+		}
+		return numerator + "/" + denominator;
+	}
+}
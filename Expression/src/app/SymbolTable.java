@@ -0,0 +1,474 @@
+package app;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class maps the names of simple variables and arrays to slots, with
+ * hashing, so a name is found in constant time however many symbols there
+ * are. Variables and arrays have separate slots, and the same name may be both
+ * a variable and an array. When a table is built from the variable lists of
+ * Expression.makeVariableLists, the slot of a symbol is its index in its list.
+ *
+ * Names can be looked up as Strings or as regions of an expression, in which
+ * whitespace is ignored.
+ *
+ */
+public class SymbolTable {
+
+	/**
+	 * Distinct names, in open addressing (linear probing) order, null for empty entries
+	 */
+	private String[] names;
+
+	/**
+	 * Variable and array slots of each entry, -1 if the name has none
+	 */
+	private int[] variableSlots, arraySlots;
+
+	/**
+	 * Number of names in the table
+	 */
+	private int size;
+
+	/**
+	 * Number of variable and array slots handed out
+	 */
+	private int variableCount, arrayCount;
+
+	/**
+	 * Lists this table was built from, if any, to recognize them again in of. They
+	 * are weakly held, so the per thread cache does not keep the lists, and the
+	 * possibly large arrays in them, alive once the caller drops them.
+	 */
+	private WeakReference<ArrayList<Variable>> vars;
+	private WeakReference<ArrayList<Array>> arrays;
+
+	/**
+	 * Names of the list items at each index when the table was built, to check
+	 * the lists against
+	 */
+	private String[] listedVariables, listedArrays;
+
+	/**
+	 * True for the tables cached by of, whose lookups are checked against the
+	 * lists, since callers may replace list items between uses
+	 */
+	private boolean checked;
+
+	/**
+	 * True once the whole lists have been checked since of last returned this table
+	 */
+	private boolean verified;
+
+	/**
+	 * Returned by the checked lookups when the table was built again, and the
+	 * name must be looked up again
+	 */
+	private static final int STALE = -2;
+
+	/**
+	 * Table of the most recently used lists of each thread
+	 */
+	private static final ThreadLocal<SymbolTable> LAST = new ThreadLocal<SymbolTable>();
+
+	/**
+	 * Initializes an empty table.
+	 */
+	public SymbolTable() {
+		names = new String[16];
+		variableSlots = new int[16];
+		arraySlots = new int[16];
+		size = 0;
+		variableCount = 0;
+		arrayCount = 0;
+	}
+
+	/**
+	 * Initializes a table with the symbols of variable lists. The slot of each symbol
+	 * is its index in its list; if a name is repeated, the first index is used.
+	 *
+	 * @param vars The variables array list
+	 * @param arrays The arrays array list
+	 */
+	public SymbolTable(ArrayList<Variable> vars, ArrayList<Array> arrays) {
+		this();
+		load(vars, arrays);
+	}
+
+	/**
+	 * Adds the symbols of variable lists, at their list indexes, to this empty table.
+	 */
+	private void load(ArrayList<Variable> vars, ArrayList<Array> arrays) {
+		listedVariables = new String[vars.size()];
+		listedArrays = new String[arrays.size()];
+		for (int i = 0; i < vars.size(); i++) {
+			listedVariables[i] = vars.get(i).name;
+			int e = entry(vars.get(i).name);
+			if (variableSlots[e] == -1) {
+				variableSlots[e] = i;
+			}
+		}
+		for (int i = 0; i < arrays.size(); i++) {
+			listedArrays[i] = arrays.get(i).name;
+			int e = entry(arrays.get(i).name);
+			if (arraySlots[e] == -1) {
+				arraySlots[e] = i;
+			}
+		}
+		variableCount = vars.size();
+		arrayCount = arrays.size();
+		this.vars = new WeakReference<ArrayList<Variable>>(vars);
+		this.arrays = new WeakReference<ArrayList<Array>>(arrays);
+	}
+
+	/**
+	 * Returns a table for variable lists. The table is cached per thread and built
+	 * again when other lists are used or the lists change size, so lists that are
+	 * used repeatedly are hashed once.
+	 *
+	 * Since items may be replaced or renamed in place, lookups in the table are
+	 * checked against the lists. A slot found must hold the name looked up. The
+	 * first time a name is not found, the lists are compared with the names they
+	 * held when the table was built. On a mismatch the table is built again before
+	 * the lookup is answered.
+	 *
+	 * @param vars The variables array list
+	 * @param arrays The arrays array list
+	 * @return Symbol table of the lists, whose slots are list indexes
+	 */
+	public static SymbolTable of(ArrayList<Variable> vars, ArrayList<Array> arrays) {
+		SymbolTable table = LAST.get();
+		if (table == null || table.vars.get() != vars || table.arrays.get() != arrays
+				|| table.variableCount != vars.size() || table.arrayCount != arrays.size()) {
+			table = new SymbolTable(vars, arrays);
+			table.checked = true;
+			table.verified = true;
+			LAST.set(table);
+		} else {
+			table.verified = false;
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the slot of a simple variable.
+	 *
+	 * @param name Name of variable
+	 * @return Slot, or -1 if there is no such variable
+	 */
+	public int variableSlot(String name) {
+		int slot = variableSlot(find(name));
+		return slot != STALE ? slot : variableSlot(find(name));
+	}
+
+	/**
+	 * Returns the slot of an array.
+	 *
+	 * @param name Name of array
+	 * @return Slot, or -1 if there is no such array
+	 */
+	public int arraySlot(String name) {
+		int slot = arraySlot(find(name));
+		return slot != STALE ? slot : arraySlot(find(name));
+	}
+
+	/**
+	 * Returns the slot of the simple variable named by the region from..to-1 of an
+	 * expression, ignoring whitespace, or -1 if there is no such variable.
+	 */
+	int variableSlot(String expr, int from, int to) {
+		int slot = variableSlot(find(expr, from, to));
+		return slot != STALE ? slot : variableSlot(find(expr, from, to));
+	}
+
+	/**
+	 * Returns the slot of the array named by the region from..to-1 of an
+	 * expression, ignoring whitespace, or -1 if there is no such array.
+	 */
+	int arraySlot(String expr, int from, int to) {
+		int slot = arraySlot(find(expr, from, to));
+		return slot != STALE ? slot : arraySlot(find(expr, from, to));
+	}
+
+	/**
+	 * Returns the slot of the simple variable named by the first length bytes of
+	 * name, read as Latin-1 characters, or -1 if there is no such variable.
+	 */
+	int variableSlot(byte[] name, int length) {
+		int slot = variableSlot(find(name, length));
+		return slot != STALE ? slot : variableSlot(find(name, length));
+	}
+
+	/**
+	 * Returns the slot of the array named by the first length bytes of name, read
+	 * as Latin-1 characters, or -1 if there is no such array.
+	 */
+	int arraySlot(byte[] name, int length) {
+		int slot = arraySlot(find(name, length));
+		return slot != STALE ? slot : arraySlot(find(name, length));
+	}
+
+	/**
+	 * Returns the variable slot of an entry, or -1 if it is -1. A checked table
+	 * whose lists no longer agree with it is built again, and STALE is returned.
+	 */
+	private int variableSlot(int e) {
+		int slot = e == -1 ? -1 : variableSlots[e];
+		if (!checked) {
+			return slot;
+		}
+		if (slot != -1) {
+			ArrayList<Variable> list = vars.get();
+			if (list == null || (slot < list.size() && list.get(slot).name.equals(names[e]))) {
+				return slot;
+			}
+		} else if (verified) {
+			return -1;
+		}
+		verify();
+		return STALE;
+	}
+
+	/**
+	 * Returns the array slot of an entry, checked as in variableSlot(int).
+	 */
+	private int arraySlot(int e) {
+		int slot = e == -1 ? -1 : arraySlots[e];
+		if (!checked) {
+			return slot;
+		}
+		if (slot != -1) {
+			ArrayList<Array> list = arrays.get();
+			if (list == null || (slot < list.size() && list.get(slot).name.equals(names[e]))) {
+				return slot;
+			}
+		} else if (verified) {
+			return -1;
+		}
+		verify();
+		return STALE;
+	}
+
+	/**
+	 * Compares the lists with the names they held when this table was built, and
+	 * builds the table again if any item was replaced, renamed, added or removed.
+	 */
+	private void verify() {
+		ArrayList<Variable> vars = this.vars.get();
+		ArrayList<Array> arrays = this.arrays.get();
+		verified = true;
+		if (vars == null || arrays == null || listed(vars, arrays)) {
+			return;
+		}
+		names = new String[16];
+		variableSlots = new int[16];
+		arraySlots = new int[16];
+		size = 0;
+		load(vars, arrays);
+	}
+
+	/**
+	 * Tells if the lists hold the names they held when this table was built.
+	 */
+	private boolean listed(ArrayList<Variable> vars, ArrayList<Array> arrays) {
+		if (vars.size() != listedVariables.length || arrays.size() != listedArrays.length) {
+			return false;
+		}
+		for (int i = 0; i < listedVariables.length; i++) {
+			if (!vars.get(i).name.equals(listedVariables[i])) {
+				return false;
+			}
+		}
+		for (int i = 0; i < listedArrays.length; i++) {
+			if (!arrays.get(i).name.equals(listedArrays[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a simple variable, if it is not already in the table.
+	 *
+	 * @param name Name of variable
+	 * @return Slot of the variable, which is the next free slot if it is new
+	 */
+	public int addVariable(String name) {
+		int e = entry(name);
+		if (variableSlots[e] == -1) {
+			variableSlots[e] = variableCount++;
+		}
+		return variableSlots[e];
+	}
+
+	/**
+	 * Adds an array, if it is not already in the table.
+	 *
+	 * @param name Name of array
+	 * @return Slot of the array, which is the next free slot if it is new
+	 */
+	public int addArray(String name) {
+		int e = entry(name);
+		if (arraySlots[e] == -1) {
+			arraySlots[e] = arrayCount++;
+		}
+		return arraySlots[e];
+	}
+
+	/**
+	 * Returns the number of variable slots handed out.
+	 *
+	 * @return Number of variable slots
+	 */
+	public int variableCount() {
+		return variableCount;
+	}
+
+	/**
+	 * Returns the number of array slots handed out.
+	 *
+	 * @return Number of array slots
+	 */
+	public int arrayCount() {
+		return arrayCount;
+	}
+
+	/**
+	 * Returns the entry of a name, or -1 if it is not in the table.
+	 */
+	private int find(String name) {
+		int mask = names.length - 1;
+		for (int e = spread(name.hashCode()) & mask; names[e] != null; e = (e + 1) & mask) {
+			if (names[e].equals(name)) {
+				return e;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the entry of the name in a region of an expression, or -1 if it is not in the table.
+	 */
+	private int find(String expr, int from, int to) {
+		int h = 0;
+		for (int i = from; i < to; i++) {
+			char c = expr.charAt(i);
+			if (!Expression.isSpace(c)) {
+				h = 31 * h + c; // as String.hashCode
+			}
+		}
+		int mask = names.length - 1;
+		for (int e = spread(h) & mask; names[e] != null; e = (e + 1) & mask) {
+			if (regionEquals(expr, from, to, names[e])) {
+				return e;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the entry of the name in the first length bytes of name, or -1 if it is not in the table.
+	 */
+	private int find(byte[] name, int length) {
+		int h = 0;
+		for (int i = 0; i < length; i++) {
+			h = 31 * h + (name[i] & 0xff); // as String.hashCode
+		}
+		int mask = names.length - 1;
+		for (int e = spread(h) & mask; names[e] != null; e = (e + 1) & mask) {
+			if (bytesEqual(name, length, names[e])) {
+				return e;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the entry of a name, adding an entry with no slots if it is new.
+	 */
+	private int entry(String name) {
+		int e = find(name);
+		if (e != -1) {
+			return e;
+		}
+		if (2 * (size + 1) > names.length) {
+			grow();
+		}
+		int mask = names.length - 1;
+		e = spread(name.hashCode()) & mask;
+		while (names[e] != null) {
+			e = (e + 1) & mask;
+		}
+		names[e] = name;
+		variableSlots[e] = -1;
+		arraySlots[e] = -1;
+		size++;
+		return e;
+	}
+
+	/**
+	 * Doubles the capacity, placing every entry again.
+	 */
+	private void grow() {
+		String[] oldNames = names;
+		int[] oldVariableSlots = variableSlots, oldArraySlots = arraySlots;
+		names = new String[oldNames.length * 2];
+		variableSlots = new int[names.length];
+		arraySlots = new int[names.length];
+		Arrays.fill(variableSlots, -1);
+		Arrays.fill(arraySlots, -1);
+		int mask = names.length - 1;
+		for (int i = 0; i < oldNames.length; i++) {
+			if (oldNames[i] == null) {
+				continue;
+			}
+			int e = spread(oldNames[i].hashCode()) & mask;
+			while (names[e] != null) {
+				e = (e + 1) & mask;
+			}
+			names[e] = oldNames[i];
+			variableSlots[e] = oldVariableSlots[i];
+			arraySlots[e] = oldArraySlots[i];
+		}
+	}
+
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Tells if the characters of the region from..to-1 of an expression, ignoring
+	 * whitespace, spell name.
+	 */
+	static boolean regionEquals(String expr, int from, int to, String name) {
+		int k = 0;
+		for (int i = from; i < to; i++) {
+			char c = expr.charAt(i);
+			if (Expression.isSpace(c)) {
+				continue;
+			}
+			if (k == name.length() || name.charAt(k) != c) {
+				return false;
+			}
+			k++;
+		}
+		return k == name.length();
+	}
+
+	/**
+	 * Tells if the first length bytes of bytes, read as Latin-1 characters, spell name.
+	 */
+	private static boolean bytesEqual(byte[] bytes, int length, String name) {
+		if (length != name.length()) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if ((bytes[i] & 0xff) != name.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
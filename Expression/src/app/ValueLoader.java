@@ -0,0 +1,242 @@
+package app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class loads variable values files (see Expression.loadVariableValues).
+ * The file is read through a FileChannel in fixed size chunks, and names,
+ * numbers and (index,value) pairs are parsed directly from the bytes as a
+ * stream, so a line may be any length and may span chunks, and loading
+ * allocates nothing per line beyond the arrays it fills. Names are looked up
+ * in the symbol table without being turned into strings. The pairs of an array
+ * are collected first, so Array.allocate can pick dense, sparse or off-heap
+ * storage from the length and the number of pairs.
+ *
+ * Each line is a name followed by a value, for a simple variable, or by a
+ * length and (index,value) pairs, for an array. Lines for names that are not
+ * in the lists are skipped.
+ *
+ */
+final class ValueLoader {
+
+	/**
+	 * Size of the chunks read from the file
+	 */
+	private static final int CHUNK = 1 << 20;
+
+	private static final int EOF = -1;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final byte[] bytes;
+
+	/**
+	 * Position and end of the unread bytes in the chunk
+	 */
+	private int pos, limit;
+
+	/**
+	 * Name being read
+	 */
+	private byte[] name = new byte[32];
+
+	/**
+	 * (index,value) pairs of the array being read, reused for every array
+	 */
+	private int[] pairIndexes = new int[64], pairValues = new int[64];
+
+	/**
+	 * Current line, for error messages, and last number read
+	 */
+	private int line = 1, number;
+
+	private ValueLoader(FileChannel channel) {
+		this.channel = channel;
+		bytes = new byte[CHUNK];
+		buffer = ByteBuffer.wrap(bytes);
+	}
+
+	/**
+	 * Loads values from a file.
+	 *
+	 * @param file Values file
+	 * @param vars The variables array list
+	 * @param arrays The arrays array list
+	 * @param collect Whether to collect the names of the symbols loaded
+	 * @return Names of the symbols loaded, or null if collect is false
+	 * @throws IOException If the file cannot be read or is incorrectly formatted
+	 */
+	static ArrayList<String> load(Path file, ArrayList<Variable> vars, ArrayList<Array> arrays, boolean collect)
+	throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new ValueLoader(channel).load(vars, arrays, collect);
+		}
+	}
+
+	private ArrayList<String> load(ArrayList<Variable> vars, ArrayList<Array> arrays, boolean collect)
+	throws IOException {
+		SymbolTable symbols = SymbolTable.of(vars, arrays);
+		ArrayList<String> loaded = collect ? new ArrayList<String>() : null;
+		int c = skipBlanks(read());
+		while (c != EOF) {
+			if (c == '\n') {
+				line++;
+				c = skipBlanks(read());
+				continue;
+			}
+			int length = 0;
+			while (c != EOF && c != '\n' && !isBlank(c)) {
+				if (length == name.length) {
+					byte[] longer = new byte[length * 2];
+					System.arraycopy(name, 0, longer, 0, length);
+					name = longer;
+				}
+				name[length++] = (byte)c;
+				c = read();
+			}
+			int vari = symbols.variableSlot(name, length);
+			int arri = symbols.arraySlot(name, length);
+			if (vari == -1 && arri == -1) {
+				while (c != EOF && c != '\n') {
+					c = read();
+				}
+				continue;
+			}
+			c = skipBlanks(number(skipBlanks(c)));
+			if (vari != -1 && (c == '\n' || c == EOF)) { // scalar symbol
+				vars.get(vari).value = number;
+				if (loaded != null) {
+					loaded.add(vars.get(vari).name);
+				}
+				continue;
+			}
+			if (arri == -1) {
+				throw error("no array " + vars.get(vari).name);
+			}
+			Array arr = arrays.get(arri);
+			int arrayLength = number;
+			if (arrayLength < 0) {
+				throw error("negative array length " + arrayLength);
+			}
+			int pairs = 0;
+			// following are (index,val) pairs
+			while (c != '\n' && c != EOF) {
+				c = expect('(', c);
+				c = skipBlanks(number(skipBlanks(c)));
+				int index = number;
+				c = expect(',', c);
+				c = skipBlanks(number(skipBlanks(c)));
+				c = skipBlanks(expect(')', c));
+				if (index < 0 || index >= arrayLength) {
+					throw error("index " + index + " out of bounds for length " + arrayLength);
+				}
+				if (pairs == pairIndexes.length) {
+					pairIndexes = Arrays.copyOf(pairIndexes, pairs * 2);
+					pairValues = Arrays.copyOf(pairValues, pairs * 2);
+				}
+				pairIndexes[pairs] = index;
+				pairValues[pairs++] = number;
+			}
+			arr.allocate(arrayLength, pairs);
+			for (int i = 0; i < pairs; i++) {
+				arr.set(pairIndexes[i], pairValues[i]);
+			}
+			if (loaded != null) {
+				loaded.add(arr.name);
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * Returns the next byte of the file, or EOF.
+	 */
+	private int read()
+	throws IOException {
+		if (pos == limit) {
+			buffer.clear();
+			int n = channel.read(buffer);
+			while (n == 0) {
+				n = channel.read(buffer);
+			}
+			if (n == EOF) {
+				return EOF;
+			}
+			pos = 0;
+			limit = n;
+		}
+		return bytes[pos++] & 0xff;
+	}
+
+	/**
+	 * Reads a number, as Integer.parseInt, starting with byte c, into number.
+	 *
+	 * @return Byte after the number
+	 */
+	private int number(int c)
+	throws IOException {
+		boolean negative = c == '-';
+		if (c == '-' || c == '+') {
+			c = read();
+		}
+		if (c < '0' || c > '9') {
+			throw error("expected a number");
+		}
+		long n = 0;
+		while (c >= '0' && c <= '9') {
+			n = 10 * n + (c - '0');
+			if (n > (long)Integer.MAX_VALUE + 1) {
+				throw error("number out of range");
+			}
+			c = read();
+		}
+		if (negative) {
+			n = -n;
+		}
+		if (n > Integer.MAX_VALUE) {
+			throw error("number out of range");
+		}
+		number = (int)n;
+		return c;
+	}
+
+	/**
+	 * Checks that byte c is the expected punctuation.
+	 *
+	 * @return Byte after c
+	 */
+	private int expect(char expected, int c)
+	throws IOException {
+		if (c != expected) {
+			throw error("expected '" + expected + "'");
+		}
+		return read();
+	}
+
+	/**
+	 * Skips blanks other than newlines, starting with byte c.
+	 *
+	 * @return First byte that is not a blank
+	 */
+	private int skipBlanks(int c)
+	throws IOException {
+		while (isBlank(c)) {
+			c = read();
+		}
+		return c;
+	}
+
+	private static boolean isBlank(int c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\f';
+	}
+
+	private IOException error(String message) {
+		return new IOException("line " + line + ": " + message);
+	}
+}
@@ -0,0 +1,124 @@
+package structures;
+
+/**
+ * A map from int keys to int values, with open addressing and linear probing in
+ * a pair of primitive arrays, so there is no boxing and no object per entry.
+ * Keys that are not in the map have value 0.
+ *
+ */
+public class IntIntMap {
+
+	/**
+	 * Marks a free slot, since keys are stored plus one so that key -1 is allowed.
+	 */
+	private static final int FREE = 0;
+
+	/**
+	 * Keys plus one, and their values. The table length is a power of two.
+	 */
+	private int[] keys, values;
+
+	/**
+	 * Number of entries in the map.
+	 */
+	private int size;
+
+	/**
+	 * Initializes map to empty, with room for the given number of entries.
+	 *
+	 * @param expected Number of entries expected.
+	 */
+	public IntIntMap(int expected) {
+		int capacity = 16;
+		while (capacity < 2 * expected && capacity < (1 << 30)) {
+			capacity *= 2;
+		}
+		keys = new int[capacity];
+		values = new int[capacity];
+		size = 0;
+	}
+
+	/**
+	 * Returns the value of a key.
+	 *
+	 * @param key Key.
+	 * @return Value of the key, 0 if it is not in the map.
+	 */
+	public int get(int key) {
+		int k = key + 1;
+		int mask = keys.length - 1;
+		for (int e = hash(k) & mask; keys[e] != FREE; e = (e + 1) & mask) {
+			if (keys[e] == k) {
+				return values[e];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Sets the value of a key.
+	 *
+	 * @param key Key, other than Integer.MAX_VALUE.
+	 * @param value Value.
+	 * @throws IllegalArgumentException If key is Integer.MAX_VALUE.
+	 */
+	public void put(int key, int value)
+	throws IllegalArgumentException {
+		if (key == Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("key " + key + " not supported");
+		}
+		int k = key + 1;
+		int mask = keys.length - 1;
+		int e = hash(k) & mask;
+		while (keys[e] != FREE) {
+			if (keys[e] == k) {
+				values[e] = value;
+				return;
+			}
+			e = (e + 1) & mask;
+		}
+		keys[e] = k;
+		values[e] = value;
+		if (2 * ++size > keys.length) {
+			grow();
+		}
+	}
+
+	/**
+	 * Returns number of entries in map.
+	 *
+	 * @return Number of entries in map.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Doubles the capacity, placing every entry again.
+	 */
+	private void grow() {
+		int[] oldKeys = keys, oldValues = values;
+		keys = new int[oldKeys.length * 2];
+		values = new int[keys.length];
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == FREE) {
+				continue;
+			}
+			int e = hash(oldKeys[i]) & mask;
+			while (keys[e] != FREE) {
+				e = (e + 1) & mask;
+			}
+			keys[e] = oldKeys[i];
+			values[e] = oldValues[i];
+		}
+	}
+
+	/**
+	 * Scrambles a key, so that runs of consecutive keys do not form long probe sequences.
+	 */
+	private static int hash(int k) {
+		int h = k * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}